@@ -1,18 +1,26 @@
 package com.anttree.flow.graph;
 
+import com.anttree.flow.graph.analysis.AnalysisOptions;
 import com.anttree.flow.graph.analysis.ClassAnalyzer;
 import com.anttree.flow.graph.analysis.JarAnalyzer;
 import com.anttree.flow.graph.canvas.CFGOptions;
 import com.anttree.flow.graph.canvas.Graph;
 import com.anttree.flow.graph.model.Constants;
-import com.anttree.flow.graph.model.Reference;
+import com.anttree.flow.graph.model.EdgeKind;
+import com.anttree.flow.graph.model.EdgeStore;
+import com.anttree.flow.graph.model.GraphView;
+import com.anttree.flow.graph.model.MappedGraph;
 import com.anttree.flow.graph.options.ParserAssembler;
 import com.anttree.flow.graph.options.PrettyHelpFormatter;
+import com.anttree.flow.graph.utils.JarUtils;
 import joptsimple.OptionException;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.*;
 
 public class ControlFlowGraph {
@@ -59,13 +67,61 @@ public class ControlFlowGraph {
             boolean omitAnonymousClasses = options.has("anonymous")
                     ? (Boolean) options.valueOf("anonymous") : false;
 
+            int threads = options.has("threads")
+                    ? (Integer) options.valueOf("threads")
+                    : 1;
+
+            String engine = options.has("engine")
+                    ? (String) options.valueOf("engine")
+                    : Constants.ENGINE_TREE;
+            if (!AnalysisOptions.isEngine(engine)) {
+                System.err.println("--engine : Unknown engine " + engine
+                        + ", expected tree, stream or verify (Tip: try --help)");
+                return;
+            }
+
+            String store = options.has("store")
+                    ? (String) options.valueOf("store")
+                    : null;
+
+            String cache = options.has("cache")
+                    ? (String) options.valueOf("cache")
+                    : null;
+
+            long maxHeapBudget = 0;
+            if (options.has("max-heap-budget")) {
+                try {
+                    maxHeapBudget = parseSize((String) options.valueOf("max-heap-budget"));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("--max-heap-budget : " + e.getMessage() + " (Tip: try --help)");
+                    return;
+                }
+            }
+
+            boolean metrics = options.has("metrics")
+                    ? (Boolean) options.valueOf("metrics") : false;
+
+            int kinds = EdgeKind.ALL;
+            if (options.has("kinds")) {
+                try {
+                    kinds = EdgeKind.parse((String) options.valueOf("kinds"));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("--kinds : " + e.getMessage() + " (Tip: try --help)");
+                    return;
+                }
+            }
+
             if (mode == null) {
                 parser.formatHelpWith(new PrettyHelpFormatter());
                 parser.printHelpOn(System.out);
                 return;
             }
 
-            CFGOptions cfgOptions = new CFGOptions(omitAnonymousClasses);
+            CFGOptions cfgOptions = new CFGOptions(omitAnonymousClasses, kinds);
+            AnalysisOptions analysisOptions = new AnalysisOptions(threads, engine);
+            analysisOptions.setMetrics(metrics);
+            analysisOptions.setMaxHeapBudget(maxHeapBudget);
+            analysisOptions.setCache(cache);
 
             if (mode.equalsIgnoreCase(Constants.MODE_CLASS) ||
                 mode.equalsIgnoreCase(Constants.MODE_CLASS_FULL)
@@ -73,14 +129,20 @@ public class ControlFlowGraph {
                 if (target == null || target.isEmpty()) {
                     System.err.println("--target class must be specified when mode is class");
                 }
-                processOnClass(output, input, target);
+                processOnClass(output, input, target, store, cfgOptions, analysisOptions);
                 return;
             }
 
             if (mode.equalsIgnoreCase(Constants.MODE_JAR) ||
                 mode.equalsIgnoreCase(Constants.MODE_JAR_FULL)
             ) {
-                processOnJar(output, input, target, cfgOptions);
+                // Drawn on the classes only, unless the member level references are filtered,
+                // or an engine has been picked : tree and stream are run as asked, verify checks the
+                // class level scan against the tree engine
+                analysisOptions.setClassLevel(kinds == EdgeKind.ALL &&
+                        (!options.has("engine") || engine.equalsIgnoreCase(Constants.ENGINE_VERIFY))
+                );
+                processOnJar(output, input, target, store, cfgOptions, analysisOptions);
                 return;
             }
 
@@ -96,35 +158,111 @@ public class ControlFlowGraph {
     private static void processOnClass(
             String output,
             String target,
-            String targetClass
-    ) {
-        Set<Reference> references;
-        if ((references = new ClassAnalyzer(target).run(
-                targetClass
-        )) == null) {
-            throw new RuntimeException("Failed to run analyzer");
+            String targetClass,
+            String store,
+            CFGOptions CFGOptions,
+            AnalysisOptions analysisOptions
+    ) throws IOException {
+        GraphView references;
+        Path graphFile = getGraphFile(target);
+        if (graphFile != null) {
+            references = MappedGraph.open(graphFile);
+        } else if (store != null) {
+            // Written without building the graph on heap, then read back off heap
+            new ClassAnalyzer(target, analysisOptions).analyze(targetClass, Path.of(store));
+            references = MappedGraph.open(Path.of(store));
+        } else {
+            EdgeStore edges;
+            if ((edges = new ClassAnalyzer(target, analysisOptions).analyze(
+                    targetClass
+            )) == null) {
+                throw new RuntimeException("Failed to run analyzer");
+            }
+            references = edges.freeze();
         }
-        Graph.draw(targetClass, references, output);
+        Graph.draw(targetClass, references, CFGOptions, output);
     }
 
     private static void processOnJar(
             String output,
             String target,
             String targetPackage,
-            CFGOptions CFGOptions
-    ) {
-        Set<Reference> references;
-        if ((references = new JarAnalyzer(target).run(
-                targetPackage
-        )) == null) {
-            throw new RuntimeException("Failed to run analyzer");
+            String store,
+            CFGOptions CFGOptions,
+            AnalysisOptions analysisOptions
+    ) throws IOException {
+        GraphView references;
+        Path graphFile = getGraphFile(target);
+        if (graphFile != null) {
+            references = MappedGraph.open(graphFile);
+        } else if (store != null) {
+            // Written without building the graph on heap, then read back off heap
+            new JarAnalyzer(target, analysisOptions).analyze(targetPackage, Path.of(store));
+            references = MappedGraph.open(Path.of(store));
+        } else {
+            EdgeStore edges;
+            if ((edges = new JarAnalyzer(target, analysisOptions).analyze(
+                    targetPackage
+            )) == null) {
+                throw new RuntimeException("Failed to run analyzer");
+            }
+            references = edges.freeze();
         }
 
-        Graph.drawClassOnly(new File(target).getName()
+        Graph.drawClassOnly(new File(JarUtils.splitClassPath(target).get(0)).getName()
                 , references
                 , CFGOptions
                 , output);
     }
 
-}
+    /**
+     * Parses a size in bytes, with an optional k, m or g suffix (ex. 512m).
+     */
+    private static long parseSize(String size) {
+        if (size == null || size.trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing size, expected bytes or a k, m or g suffix (ex. 512m)");
+        }
+        String value = size.trim().toLowerCase();
+        long unit = 1;
+        if (value.endsWith("k")) {
+            unit = 1L << 10;
+        } else if (value.endsWith("m")) {
+            unit = 1L << 20;
+        } else if (value.endsWith("g")) {
+            unit = 1L << 30;
+        }
+        if (unit > 1) {
+            value = value.substring(0, value.length() - 1);
+        }
+        long amount;
+        try {
+            amount = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid size " + size
+                    + ", expected bytes or a k, m or g suffix (ex. 512m)");
+        }
+        if (amount < 0 || amount > Long.MAX_VALUE / unit) {
+            throw new IllegalArgumentException("Invalid size " + size
+                    + ", expected a positive size below " + (Long.MAX_VALUE / (1L << 30)) + "g");
+        }
+        return amount * unit;
+    }
 
+    /**
+     * Returns the graph file saved with --store given as input, null when the input is to be analysed.
+     * Only a single regular file may be a graph file, the classpaths and jrt:/ are never probed.
+     */
+    private static Path getGraphFile(String input) {
+        List<String> elements = JarUtils.splitClassPath(input);
+        if (elements.size() != 1) {
+            return null;
+        }
+        try {
+            Path file = Path.of(elements.get(0));
+            return Files.isRegularFile(file) && MappedGraph.isGraphFile(file) ? file : null;
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+}
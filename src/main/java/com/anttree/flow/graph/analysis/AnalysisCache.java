@@ -0,0 +1,349 @@
+package com.anttree.flow.graph.analysis;
+
+import com.anttree.flow.graph.model.EdgeStore;
+import com.anttree.flow.graph.model.SymbolTable;
+import org.objectweb.asm.ClassReader;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Persistent per-class results of the inspection, for incremental analyses.
+ * <p>
+ * A class is keyed by its entry name and the fingerprint of its bytes (CRC-32 and
+ * size, from the zip central directory when available). A class whose fingerprint
+ * matches reuses its stored edges, and is neither parsed nor inspected.
+ * <p>
+ * Every edge found by the inspection of a class has that class as source owner,
+ * so the edges of the inspected classes are split back per class by their source owner.
+ * Classes whose edges can not be told apart that way (two entries of the same class
+ * name, or an entry named after another class) are not cached, and always inspected.
+ * Classes without any edge (module-info) are cached with none.
+ * <pre>
+ * header     magic, version
+ * symbols    int count, then (int length, UTF-8 bytes) per symbol
+ * classes    int count, then per class : int name symbol, long fingerprint, int edge count,
+ *            then (int owner, int name, int type) twice, int count, int kinds per edge
+ * </pre>
+ */
+public final class AnalysisCache {
+
+    private static final int MAGIC          = 0x43464743;   // CFGC
+    // To be increased whenever the inspection emits different edges, older caches are then dropped
+    private static final int VERSION        = 1;
+
+    private static final int EDGE_INTS      = 8;
+
+    private static final SymbolTable SYMBOLS = SymbolTable.global();
+
+    private static final class CachedClass {
+        final long fingerprint;
+        final String[] symbols;
+        final int[] edges;      // EDGE_INTS per edge, symbols local to the array above
+
+        CachedClass(long fingerprint, String[] symbols, int[] edges) {
+            this.fingerprint = fingerprint;
+            this.symbols = symbols;
+            this.edges = edges;
+        }
+    }
+
+    private final Path file;
+    private final Map<String, CachedClass> classes = new HashMap<>();
+
+    private int hits;
+    private int misses;
+    private int uncached;
+
+    private AnalysisCache(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the cache file, an absent, outdated or corrupted file gives an empty cache.
+     */
+    public static AnalysisCache load(Path file) {
+        AnalysisCache cache = new AnalysisCache(file);
+        if (!Files.isRegularFile(file)) {
+            return cache;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(file), 1 << 16
+        ))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return cache;
+            }
+            String[] symbols = new String[input.readInt()];
+            for (int symbol = 0; symbol < symbols.length; symbol++) {
+                byte[] bytes = new byte[input.readInt()];
+                input.readFully(bytes);
+                symbols[symbol] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            int classCount = input.readInt();
+            for (int index = 0; index < classCount; index++) {
+                String name = symbols[input.readInt()];
+                long fingerprint = input.readLong();
+                int[] edges = new int[input.readInt() * EDGE_INTS];
+                for (int value = 0; value < edges.length; value++) {
+                    edges[value] = input.readInt();
+                }
+                cache.classes.put(name, new CachedClass(fingerprint, symbols, edges));
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring the analysis cache " + file + " (" + e + ")");
+            cache.classes.clear();
+        }
+        return cache;
+    }
+
+    /**
+     * Splits the classes into the ones to be inspected, and the ones which reuse their cached edges.
+     *
+     * @return the names of the classes whose cached edges are still valid
+     */
+    public Set<String> findHits(ClassRepository repository) {
+        Set<String> hitNames = new HashSet<>();
+        for (String name : repository.names()) {
+            CachedClass cached = classes.get(name);
+            long fingerprint = repository.getSource(name).getFingerprint();
+            if (cached != null &&
+                fingerprint != ClassSource.NO_FINGERPRINT &&
+                cached.fingerprint == fingerprint
+            ) {
+                hitNames.add(name);
+            }
+        }
+        hits = hitNames.size();
+        misses = repository.names().size() - hits;
+        return hitNames;
+    }
+
+    /**
+     * Adds the cached edges of the classes to the store.
+     */
+    public void addEdges(Collection<String> names, EdgeStore edges) {
+        Map<String[], int[]> symbolIds = new IdentityHashMap<>();
+        for (String name : names) {
+            CachedClass cached = classes.get(name);
+            int[] ids = symbolIds.computeIfAbsent(cached.symbols, symbols -> {
+                int[] unresolved = new int[symbols.length];
+                Arrays.fill(unresolved, -1);
+                return unresolved;
+            });
+            for (int offset = 0; offset < cached.edges.length; offset += EDGE_INTS) {
+                int source = component(cached, ids, offset);
+                int destination = component(cached, ids, offset + 3);
+                edges.add(
+                        EdgeStore.edge(source, destination),
+                        cached.edges[offset + 6],
+                        cached.edges[offset + 7]
+                );
+            }
+        }
+    }
+
+    private static int component(CachedClass cached, int[] ids, int offset) {
+        return SYMBOLS.component(
+                symbol(cached, ids, cached.edges[offset]),
+                symbol(cached, ids, cached.edges[offset + 1]),
+                cached.edges[offset + 2]
+        );
+    }
+
+    private static int symbol(CachedClass cached, int[] ids, int local) {
+        if (ids[local] < 0) {
+            ids[local] = SYMBOLS.intern(cached.symbols[local]);
+        }
+        return ids[local];
+    }
+
+    /**
+     * Records the edges of the inspected classes, split per class on their source owner.
+     */
+    public void update(ClassRepository inspected, EdgeStore edges) {
+        Map<Integer, List<Long>> edgesByOwner = new HashMap<>();
+        edges.forEach((long edge) -> {
+            int owner = SYMBOLS.getComponentOwner(EdgeStore.source(edge));
+            edgesByOwner.computeIfAbsent(owner, key -> new ArrayList<>()).add(edge);
+        });
+
+        Map<Integer, String> namesByOwner = new HashMap<>();
+        Set<Integer> ambiguousOwners = new HashSet<>();
+        List<String> emptyNames = new ArrayList<>();
+        for (String name : inspected.names()) {
+            classes.remove(name);
+            int owner = SYMBOLS.className(name);
+            if (namesByOwner.putIfAbsent(owner, name) != null) {
+                ambiguousOwners.add(owner);
+            }
+            if (!edgesByOwner.containsKey(owner)) {
+                String className = readClassName(inspected.getSource(name));
+                if (className == null) {
+                    continue;
+                }
+                int classOwner = SYMBOLS.className(className);
+                if (classOwner == owner) {
+                    // A class without any reference, cached as such so that it is not read again
+                    emptyNames.add(name);
+                } else {
+                    // Named after another class (META-INF/versions/9/a/B.class), its edges went to that class
+                    ambiguousOwners.add(classOwner);
+                }
+            }
+        }
+
+        Map<Integer, Integer> localIds = new HashMap<>();
+        List<String> localSymbols = new ArrayList<>();
+        Map<String, int[]> updates = new HashMap<>();
+        for (Map.Entry<Integer, List<Long>> group : edgesByOwner.entrySet()) {
+            String name = namesByOwner.get(group.getKey());
+            if (name == null ||
+                ambiguousOwners.contains(group.getKey()) ||
+                inspected.getSource(name).getFingerprint() == ClassSource.NO_FINGERPRINT
+            ) {
+                continue;
+            }
+            int[] cachedEdges = new int[group.getValue().size() * EDGE_INTS];
+            int offset = 0;
+            for (long edge : group.getValue()) {
+                offset = put(cachedEdges, offset, EdgeStore.source(edge), localIds, localSymbols);
+                offset = put(cachedEdges, offset, EdgeStore.destination(edge), localIds, localSymbols);
+                cachedEdges[offset++] = edges.count(edge);
+                cachedEdges[offset++] = edges.kinds(edge);
+            }
+            updates.put(name, cachedEdges);
+        }
+        for (String name : emptyNames) {
+            if (!ambiguousOwners.contains(SYMBOLS.className(name)) &&
+                inspected.getSource(name).getFingerprint() != ClassSource.NO_FINGERPRINT
+            ) {
+                updates.put(name, new int[0]);
+            }
+        }
+
+        String[] symbols = localSymbols.toArray(new String[0]);
+        updates.forEach((name, cachedEdges) -> classes.put(name, new CachedClass(
+                inspected.getSource(name).getFingerprint(),
+                symbols,
+                cachedEdges
+        )));
+        uncached = inspected.names().size() - updates.size();
+    }
+
+    private static String readClassName(ClassSource source) {
+        try {
+            return new ClassReader(source.read()).getClassName();
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static int put(
+            int[] cachedEdges,
+            int offset,
+            int component,
+            Map<Integer, Integer> localIds,
+            List<String> localSymbols
+    ) {
+        cachedEdges[offset++] = local(SYMBOLS.getComponentOwner(component), localIds, localSymbols);
+        cachedEdges[offset++] = local(SYMBOLS.getComponentName(component), localIds, localSymbols);
+        cachedEdges[offset++] = SYMBOLS.getComponentType(component);
+        return offset;
+    }
+
+    private static int local(int symbol, Map<Integer, Integer> localIds, List<String> localSymbols) {
+        return localIds.computeIfAbsent(symbol, key -> {
+            localSymbols.add(SYMBOLS.get(key));
+            return localSymbols.size() - 1;
+        });
+    }
+
+    /**
+     * Drops the classes which are not in the repository anymore.
+     *
+     * @param scope names the repository has been filtered on, null for every class,
+     *              the classes out of the scope are kept for the other targets
+     */
+    public void retain(Set<String> names, Predicate<String> scope) {
+        classes.keySet().removeIf(name ->
+                (scope == null || scope.test(name)) && !names.contains(name)
+        );
+    }
+
+    /**
+     * Writes the cache, through a temporary file so that an interrupted run keeps the previous cache.
+     */
+    public void save() throws IOException {
+        // Symbols of every class renumbered in a single table
+        Map<String, Integer> symbolIds = new LinkedHashMap<>();
+        Map<String[], int[]> remaps = new IdentityHashMap<>();
+        for (Map.Entry<String, CachedClass> entry : classes.entrySet()) {
+            symbolIds.putIfAbsent(entry.getKey(), symbolIds.size());
+            String[] symbols = entry.getValue().symbols;
+            remaps.computeIfAbsent(symbols, key -> {
+                int[] remap = new int[key.length];
+                for (int local = 0; local < key.length; local++) {
+                    remap[local] = symbolIds.computeIfAbsent(key[local], symbol -> symbolIds.size());
+                }
+                return remap;
+            });
+        }
+
+        Path parent = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary), 1 << 16
+            ))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeInt(symbolIds.size());
+                for (String symbol : symbolIds.keySet()) {
+                    byte[] bytes = symbol.getBytes(StandardCharsets.UTF_8);
+                    output.writeInt(bytes.length);
+                    output.write(bytes);
+                }
+                output.writeInt(classes.size());
+                for (Map.Entry<String, CachedClass> entry : classes.entrySet()) {
+                    CachedClass cached = entry.getValue();
+                    int[] remap = remaps.get(cached.symbols);
+                    output.writeInt(symbolIds.get(entry.getKey()));
+                    output.writeLong(cached.fingerprint);
+                    output.writeInt(cached.edges.length / EDGE_INTS);
+                    for (int offset = 0; offset < cached.edges.length; offset += EDGE_INTS) {
+                        output.writeInt(remap[cached.edges[offset]]);
+                        output.writeInt(remap[cached.edges[offset + 1]]);
+                        output.writeInt(cached.edges[offset + 2]);
+                        output.writeInt(remap[cached.edges[offset + 3]]);
+                        output.writeInt(remap[cached.edges[offset + 4]]);
+                        output.writeInt(cached.edges[offset + 5]);
+                        output.writeInt(cached.edges[offset + 6]);
+                        output.writeInt(cached.edges[offset + 7]);
+                    }
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Returns the hit and miss counts of the last {@link #findHits(ClassRepository)}.
+     */
+    public String getStatistics() {
+        int total = hits + misses;
+        return String.format(
+                "Analysis cache : %d hits, %d misses (%.1f%% hits), %d classes not cacheable",
+                hits,
+                misses,
+                total == 0 ? 0.0 : 100.0 * hits / total,
+                uncached
+        );
+    }
+}
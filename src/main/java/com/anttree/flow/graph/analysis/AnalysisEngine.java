@@ -1,14 +1,126 @@
 package com.anttree.flow.graph.analysis;
 
+import com.anttree.flow.graph.model.EdgeCollector;
+import com.anttree.flow.graph.model.EdgeStore;
+import com.anttree.flow.graph.model.MappedGraph;
 import com.anttree.flow.graph.model.Reference;
-import org.objectweb.asm.tree.ClassNode;
+import com.anttree.flow.graph.model.Constants;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 public abstract class AnalysisEngine {
 
-    public HashMap<String, ClassNode> classes = new HashMap<>();     // File name(b5/e.class) : ClassNode
+    public ClassRepository classes = new ClassRepository();     // File name(b5/e.class) : ClassNode, parsed on demand
 
-    public abstract Set<Reference> run(String target);
+    protected final AnalysisOptions options;
+
+    protected AnalysisEngine(AnalysisOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Runs the analysis, the edges refer to components of the global SymbolTable.
+     */
+    public abstract EdgeStore analyze(String target);
+
+    /**
+     * Runs the analysis, and writes its graph to the file, see {@link MappedGraph}.
+     */
+    public void analyze(String target, Path graphFile) throws IOException {
+        EdgeStore edges = analyze(target);
+        if (edges == null) {
+            throw new RuntimeException("Failed to run analyzer");
+        }
+        MappedGraph.write(edges.sorted(), graphFile);
+    }
+
+    /**
+     * Runs the analysis, and views its edges as References.
+     */
+    public Set<Reference> run(String target) {
+        EdgeStore edges = analyze(target);
+        return edges != null ? edges.references() : null;
+    }
+
+    /**
+     * Profile used to parse the classes, reference extraction by default.
+     * Override this for analyses which require the frames or debug information.
+     */
+    protected ParseProfile getParseProfile() {
+        return ParseProfile.REFERENCES;
+    }
+
+    /**
+     * Runs the inspection engine selected in the options, and returns the collector
+     * holding its edges, to be completed as a store or written as a graph file.
+     * In verify mode both engines are run, and their references must be identical.
+     * Each engine run merges its edges into a collector of its own.
+     */
+    protected EdgeCollector inspect(
+            Consumer<EdgeCollector> treeEngine,
+            Consumer<EdgeCollector> streamEngine
+    ) {
+        switch (options.getEngine()) {
+            case Constants.ENGINE_STREAM:
+                return collect(Constants.ENGINE_STREAM, streamEngine);
+            case Constants.ENGINE_VERIFY:
+                return new EdgeCollector(verify(
+                        Constants.ENGINE_TREE,
+                        collect(Constants.ENGINE_TREE, treeEngine).getEdges(),
+                        Constants.ENGINE_STREAM,
+                        collect(Constants.ENGINE_STREAM, streamEngine).getEdges()
+                ));
+            default:
+                return collect(Constants.ENGINE_TREE, treeEngine);
+        }
+    }
+
+    protected EdgeCollector collect(String engine, Consumer<EdgeCollector> inspection) {
+        // Under a heap budget, the edges get one half of it, the parsed classes the other
+        EdgeCollector collector = new EdgeCollector(options.getMaxHeapBudget() / 2);
+        inspection.accept(collector);
+        if (options.isMetrics()) {
+            System.out.println("[" + engine + "] " + collector.getStatistics());
+        }
+        return collector;
+    }
+
+    /**
+     * Returns the expected edges when both engines found the same ones, fails with the first differences otherwise.
+     */
+    protected static EdgeStore verify(
+            String expectedEngine,
+            EdgeStore expectedEdges,
+            String actualEngine,
+            EdgeStore actualEdges
+    ) {
+        if (expectedEdges.sameEdges(actualEdges)) {
+            System.out.println("Engines matched on " + expectedEdges.size() + " references");
+            return expectedEdges;
+        }
+
+        Set<String> expected = expectedEdges.references().stream()
+                .map(Reference::toString)
+                .collect(Collectors.toCollection(TreeSet::new));
+        Set<String> actual = actualEdges.references().stream()
+                .map(Reference::toString)
+                .collect(Collectors.toCollection(TreeSet::new));
+
+        List<String> differences = new ArrayList<>();
+        expected.stream().filter(r -> !actual.contains(r)).limit(10)
+                .forEach(r -> differences.add("only in " + expectedEngine + " : " + r));
+        actual.stream().filter(r -> !expected.contains(r)).limit(10)
+                .forEach(r -> differences.add("only in " + actualEngine + " : " + r));
+
+        throw new RuntimeException("Engines mismatched ("
+                + expected.size() + " / " + actual.size() + " references)\n"
+                + String.join("\n", differences));
+    }
 }
@@ -0,0 +1,99 @@
+package com.anttree.flow.graph.analysis;
+
+import com.anttree.flow.graph.model.Constants;
+
+public class AnalysisOptions {
+
+    private int threads = 1;
+    private String engine = Constants.ENGINE_TREE;
+    private boolean metrics = false;
+    private long maxHeapBudget = 0;     // bytes, 0 for no budget
+    private String cache = null;        // analysis cache file, null for no cache
+    private boolean classLevel = false; // only the references between classes are needed
+
+    public AnalysisOptions() {
+        // Default options
+    }
+
+    public AnalysisOptions(
+            int threads,
+            String engine
+    ) {
+        setThreads(threads);
+        setEngine(engine);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    public void setEngine(String engine) {
+        if (!isEngine(engine)) {
+            throw new IllegalArgumentException("Unknown engine " + engine
+                    + ", expected " + Constants.ENGINE_TREE
+                    + ", " + Constants.ENGINE_STREAM
+                    + " or " + Constants.ENGINE_VERIFY);
+        }
+        this.engine = engine.toLowerCase();
+    }
+
+    public static boolean isEngine(String engine) {
+        return Constants.ENGINE_TREE.equalsIgnoreCase(engine) ||
+               Constants.ENGINE_STREAM.equalsIgnoreCase(engine) ||
+               Constants.ENGINE_VERIFY.equalsIgnoreCase(engine);
+    }
+
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(boolean metrics) {
+        this.metrics = metrics;
+    }
+
+    public long getMaxHeapBudget() {
+        return maxHeapBudget;
+    }
+
+    public boolean hasMaxHeapBudget() {
+        return maxHeapBudget > 0;
+    }
+
+    /**
+     * Sets the heap, in bytes, the parsed classes and the edges may take, 0 for no budget.
+     */
+    public void setMaxHeapBudget(long maxHeapBudget) {
+        this.maxHeapBudget = Math.max(0, maxHeapBudget);
+    }
+
+    public String getCache() {
+        return cache;
+    }
+
+    /**
+     * Sets the file keeping the edges of every class between two runs, null for no cache.
+     */
+    public void setCache(String cache) {
+        this.cache = cache;
+    }
+
+    public boolean isClassLevel() {
+        return classLevel;
+    }
+
+    /**
+     * Tells that only the references between classes are drawn, so that the jar analysis
+     * may read them out of the class files without parsing the members.
+     */
+    public void setClassLevel(boolean classLevel) {
+        this.classLevel = classLevel;
+    }
+}
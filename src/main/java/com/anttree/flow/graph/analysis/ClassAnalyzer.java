@@ -1,24 +1,29 @@
 package com.anttree.flow.graph.analysis;
 
 import com.anttree.flow.graph.insepction.ReferenceInspector;
+import com.anttree.flow.graph.insepction.StreamingReferenceInspector;
 import com.anttree.flow.graph.model.Ext;
-import com.anttree.flow.graph.model.Reference;
+import com.anttree.flow.graph.model.EdgeStore;
 import com.anttree.flow.graph.utils.JarUtils;
 import org.objectweb.asm.tree.ClassNode;
 
 import java.io.IOException;
-import java.util.Set;
 
 public class ClassAnalyzer extends AnalysisEngine {
 
     private final String inputFile;
 
     public ClassAnalyzer(String inputFile) {
+        this(inputFile, new AnalysisOptions());
+    }
+
+    public ClassAnalyzer(String inputFile, AnalysisOptions options) {
+        super(options);
         this.inputFile = inputFile;
     }
 
     @Override
-    public Set<Reference> run(String target) {
+    public EdgeStore analyze(String target) {
         try {
             return executor(target);
         } catch (Exception e) {
@@ -26,9 +31,10 @@ public class ClassAnalyzer extends AnalysisEngine {
         }
     }
 
-    public Set<Reference> executor(String target) {
+    public EdgeStore executor(String target) {
         try {
-            classes = JarUtils.getEntries(inputFile);
+            classes = JarUtils.indexClassPath(inputFile, options.getThreads());
+            classes.setParseProfile(getParseProfile());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -37,12 +43,25 @@ public class ClassAnalyzer extends AnalysisEngine {
             throw new RuntimeException("Empty class");
         }
 
-        ClassNode targetClassNode = classes.get(target + Ext.CLASS);
+        String entryName = target + Ext.CLASS;
 
-        if (targetClassNode == null) {
+        if (!classes.containsKey(entryName)) {
             throw new RuntimeException("Target class " + target + " not found");
         }
 
-        return new ReferenceInspector().runThroughClassNode(targetClassNode);
+        // Only the target class is parsed
+        return inspect(collector -> {
+            ClassNode targetClassNode = classes.get(entryName);
+
+            if (targetClassNode == null) {
+                throw new RuntimeException("Target class " + target + " not found");
+            }
+
+            new ReferenceInspector().runThroughClassNode(targetClassNode, collector);
+        }, collector -> {
+            new StreamingReferenceInspector(
+                    classes.getParseProfile().getParsingOptions()
+            ).runThroughClass(classes.getSource(entryName), collector);
+        }).getEdges();
     }
 }
@@ -0,0 +1,248 @@
+package com.anttree.flow.graph.analysis;
+
+import com.anttree.flow.graph.utils.ParallelUtils;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Lazy map of the entry names (b5/e.class) to their ClassNode.
+ * <p>
+ * Entry names are indexed up front with the source of their bytes,
+ * a ClassNode is only parsed when it is asked for, then cached.
+ * Iterating over the entries parses every class not yet parsed,
+ * call {@link #materialize(int)} beforehand to parse them in parallel.
+ * Parsed classes can be evicted once inspected, they are parsed again if asked for.
+ */
+public class ClassRepository extends AbstractMap<String, ClassNode> {
+
+    private final Map<String, ClassSource> sources = new LinkedHashMap<>();
+    private final Map<String, ClassNode> parsed = new ConcurrentHashMap<>();
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+
+    // Approximate heap held by the parts of a parsed ClassNode, measured on REFERENCES profiles
+    private static final int CLASS_BYTES        = 800;
+    private static final int METHOD_BYTES       = 300;
+    private static final int FIELD_BYTES        = 100;
+    private static final int INSTRUCTION_BYTES  = 56;
+
+    private ParseProfile parseProfile = ParseProfile.FULL;
+
+    public ClassRepository() {
+        // Empty repository
+    }
+
+    /**
+     * Registers the class entry. The first registered source of a name wins,
+     * the same way the first class found on a classpath shadows the others.
+     *
+     * @return false if the name was already registered
+     */
+    public boolean register(String name, ClassSource source) {
+        return sources.putIfAbsent(name, source) == null;
+    }
+
+    /**
+     * Registers every class of the other repository, in its registration order.
+     *
+     * @return the number of classes shadowed by the ones already registered
+     */
+    public int registerAll(ClassRepository repository) {
+        int shadowed = 0;
+        for (Map.Entry<String, ClassSource> entry : repository.sources.entrySet()) {
+            if (!register(entry.getKey(), entry.getValue())) {
+                shadowed++;
+            }
+        }
+        return shadowed;
+    }
+
+    public Set<String> names() {
+        return Collections.unmodifiableSet(sources.keySet());
+    }
+
+    public ClassSource getSource(String name) {
+        return sources.get(name);
+    }
+
+    /**
+     * Returns the archive the class has been loaded from.
+     */
+    public String getOrigin(String name) {
+        ClassSource source = sources.get(name);
+        return source != null ? source.getOrigin() : null;
+    }
+
+    /**
+     * Returns a repository sharing the sources of the names accepted by the filter.
+     */
+    public ClassRepository filter(Predicate<String> nameFilter) {
+        ClassRepository repository = new ClassRepository();
+        repository.parseProfile = parseProfile;
+        sources.forEach((name, source) -> {
+            if (nameFilter.test(name)) {
+                repository.sources.put(name, source);
+            }
+        });
+        return repository;
+    }
+
+    public ParseProfile getParseProfile() {
+        return parseProfile;
+    }
+
+    /**
+     * Sets the profile used for the classes parsed from now on.
+     */
+    public void setParseProfile(ParseProfile parseProfile) {
+        this.parseProfile = parseProfile;
+    }
+
+    /**
+     * Parses every class not parsed yet, over the given number of threads.
+     */
+    public ClassRepository materialize(int threads) {
+        return materialize(threads, sources.keySet());
+    }
+
+    /**
+     * Parses the given classes not parsed yet, over the given number of threads.
+     */
+    public ClassRepository materialize(int threads, Collection<String> names) {
+        List<String> pending = new ArrayList<>();
+        for (String name : names) {
+            if (!parsed.containsKey(name) && !failed.contains(name)) {
+                pending.add(name);
+            }
+        }
+        ParallelUtils.forEach(threads, pending.size(), index ->
+                get(pending.get(index))
+        );
+        return this;
+    }
+
+    /**
+     * Drops the parsed ClassNodes of the given classes.
+     */
+    public void evict(Collection<String> names) {
+        for (String name : names) {
+            parsed.remove(name);
+        }
+    }
+
+    /**
+     * Returns an estimate of the heap held by the ClassNode, within 15 % of the measured size.
+     */
+    public static long estimateSize(ClassNode classNode) {
+        long size = CLASS_BYTES + (long) classNode.fields.size() * FIELD_BYTES;
+        for (MethodNode methodNode : classNode.methods) {
+            size += METHOD_BYTES;
+            if (methodNode.instructions != null) {
+                size += (long) methodNode.instructions.size() * INSTRUCTION_BYTES;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public ClassNode get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        ClassNode classNode = parsed.get(key);
+        if (classNode != null) {
+            return classNode;
+        }
+
+        ClassSource source = sources.get(key);
+        if (source == null || failed.contains(key)) {
+            return null;
+        }
+
+        try {
+            classNode = new ClassNode();
+            source.accept(classNode, parseProfile.getParsingOptions());
+        } catch (Exception e) {
+            //Ignore the failed classes if they are preserved
+            e.printStackTrace();
+            failed.add((String) key);
+            return null;
+        }
+
+        ClassNode previous = parsed.putIfAbsent((String) key, classNode);
+        return previous != null ? previous : classNode;
+    }
+
+    /**
+     * Sources of every indexed class, in the registration order.
+     */
+    public Collection<ClassSource> sources() {
+        return Collections.unmodifiableCollection(sources.values());
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return sources.containsKey(key);
+    }
+
+    /**
+     * Tells whether any class is indexed, without parsing anything.
+     */
+    @Override
+    public boolean isEmpty() {
+        return sources.isEmpty();
+    }
+
+    @Override
+    public Set<Entry<String, ClassNode>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, ClassNode>> iterator() {
+                Iterator<String> names = sources.keySet().iterator();
+                return new Iterator<>() {
+                    private Entry<String, ClassNode> next = advance();
+
+                    private Entry<String, ClassNode> advance() {
+                        while (names.hasNext()) {
+                            String name = names.next();
+                            ClassNode classNode = get(name);
+                            if (classNode != null) {
+                                return new SimpleImmutableEntry<>(name, classNode);
+                            }
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public Entry<String, ClassNode> next() {
+                        if (next == null) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, ClassNode> current = next;
+                        next = advance();
+                        return current;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                int size = 0;
+                for (String name : sources.keySet()) {
+                    if (get(name) != null) {
+                        size++;
+                    }
+                }
+                return size;
+            }
+        };
+    }
+}
@@ -0,0 +1,92 @@
+package com.anttree.flow.graph.analysis;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/**
+ * Supplies a single class, only when the class is actually parsed.
+ */
+public class ClassSource {
+
+    public interface Reader {
+        byte[] read() throws IOException;
+    }
+
+    public static final long NO_FINGERPRINT = -1L;
+
+    private final String origin;
+    private final Reader reader;
+    private final long fingerprint;
+
+    /**
+     * @param origin the archive the class comes from (ex. app.jar!/BOOT-INF/lib/lib.jar)
+     * @param reader reads the class bytes
+     */
+    public ClassSource(String origin, Reader reader) {
+        this(origin, reader, NO_FINGERPRINT);
+    }
+
+    /**
+     * @param fingerprint CRC-32 and size of the class bytes when already known, see {@link #fingerprint(long, long)}
+     */
+    public ClassSource(String origin, Reader reader, long fingerprint) {
+        this.origin = origin;
+        this.reader = reader;
+        this.fingerprint = fingerprint;
+    }
+
+    public static long fingerprint(long crc, long size) {
+        return (crc << 32) | (size & 0xFFFFFFFFL);
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public byte[] read() throws IOException {
+        return reader.read();
+    }
+
+    /**
+     * Tells whether {@link #read()} gives the bytes of a class file,
+     * false for the sources which are only visited (dex ...).
+     */
+    public boolean isClassFile() {
+        return true;
+    }
+
+    /**
+     * Returns the CRC-32 and size of the class bytes, packed in a long.
+     * Taken from the zip central directory when known, else computed over the bytes,
+     * which are read but not parsed. {@link #NO_FINGERPRINT} when the bytes can not be read.
+     */
+    public long getFingerprint() {
+        if (fingerprint != NO_FINGERPRINT) {
+            return fingerprint;
+        }
+        try {
+            byte[] bytes = read();
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            return fingerprint(crc.getValue(), bytes.length);
+        } catch (IOException e) {
+            return NO_FINGERPRINT;
+        }
+    }
+
+    /**
+     * Makes the visitor visit the class, the same way {@link ClassReader#accept(ClassVisitor, int)} does.
+     * Sources which are not class files (dex ...) override this.
+     */
+    public void accept(ClassVisitor classVisitor, int parsingOptions) throws IOException {
+        new ClassReader(read()).accept(classVisitor, parsingOptions);
+    }
+
+    @Override
+    public String toString() {
+        return origin;
+    }
+}
@@ -1,24 +1,43 @@
 package com.anttree.flow.graph.analysis;
 
+import com.anttree.flow.graph.insepction.ConstantPoolInspector;
 import com.anttree.flow.graph.insepction.ReferenceInspector;
-import com.anttree.flow.graph.model.Reference;
+import com.anttree.flow.graph.insepction.StreamingReferenceInspector;
+import com.anttree.flow.graph.model.Constants;
+import com.anttree.flow.graph.model.EdgeCollector;
+import com.anttree.flow.graph.model.EdgeStore;
 import com.anttree.flow.graph.utils.JarUtils;
+import com.anttree.flow.graph.utils.PrefixTrie;
 import org.objectweb.asm.tree.ClassNode;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class JarAnalyzer extends AnalysisEngine {
 
+    // Classes parsed per thread between two checks of the heap budget
+    private static final int PARSE_BATCH_SIZE = 16;
+
+    // Name of the class level engine in the metrics and verify reports
+    private static final String CONSTANT_POOL_ENGINE = "constant pool";
+
     private final String inputFile;
 
     public JarAnalyzer(String inputFile) {
+        this(inputFile, new AnalysisOptions());
+    }
+
+    public JarAnalyzer(String inputFile, AnalysisOptions options) {
+        super(options);
         this.inputFile = inputFile;
     }
 
     @Override
-    public Set<Reference> run(String target) {
+    public EdgeStore analyze(String target) {
         try {
             return executor(target);
         } catch (Exception e) {
@@ -26,33 +45,153 @@ public class JarAnalyzer extends AnalysisEngine {
         }
     }
 
-    public Set<Reference> executor(String target) {
-        HashMap<String, ClassNode> wholeClasses;
+    /**
+     * Runs the analysis, and writes its graph to the file. The edges spilled under
+     * the heap budget are merged straight into the file, the graph is never built on heap.
+     */
+    @Override
+    public void analyze(String target, Path graphFile) throws IOException {
+        collectClasses(target).writeGraph(graphFile);
+    }
+
+    public EdgeStore executor(String target) {
+        return collectClasses(target).getEdges();
+    }
+
+    private EdgeCollector collectClasses(String target) {
+        // The target packages are matched against the entry names while indexing,
+        // the other classes are never inflated nor parsed
+        PrefixTrie targetFilter = null;
+        if (target != null && !target.isEmpty()) {
+            targetFilter = new PrefixTrie(Arrays.stream(target.split(","))
+                    .map(String::trim)
+                    .collect(Collectors.toList()));
+        }
 
         try {
-            wholeClasses = JarUtils.getEntries(inputFile);
+            classes = JarUtils.indexClassPath(inputFile, options.getThreads(), targetFilter);
+            classes.setParseProfile(getParseProfile());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
-        if (target == null || target.isEmpty()) {
-            classes.putAll(wholeClasses);
-        } else {
-            List<String> targets = Arrays.stream(target.split(","))
-                    .map(String::trim)
-                    .collect(Collectors.toList());
+        if (classes.isEmpty()) {
+            throw new RuntimeException("Empty class");
+        }
+
+        if (options.getCache() != null) {
+            return new EdgeCollector(inspectIncrementally(targetFilter));
+        }
+        return inspectClasses();
+    }
 
-            wholeClasses.entrySet().stream().filter(entry ->
-                targets.stream().anyMatch(t -> entry.getKey().startsWith(t))
-            ).forEach(entry ->
-                classes.put(entry.getKey(), entry.getValue())
+    private EdgeCollector inspectClasses() {
+        // The cache keeps the member level references, for the runs which need them
+        if (options.isClassLevel() &&
+            options.getCache() == null &&
+            classes.sources().stream().allMatch(ClassSource::isClassFile)
+        ) {
+            return scanClasses();
+        }
+        return inspect(this::inspectClassNodes, collector ->
+                new StreamingReferenceInspector(
+                        classes.getParseProfile().getParsingOptions()
+                ).inspectClasses(classes.sources(), collector, options.getThreads())
+        );
+    }
+
+    private void inspectClassNodes(EdgeCollector collector) {
+        if (options.hasMaxHeapBudget()) {
+            inspectWithinBudget(collector);
+        } else {
+            new ReferenceInspector().inspectClassNodes(
+                    classes.materialize(options.getThreads()).values(),
+                    collector,
+                    options.getThreads()
             );
         }
+    }
 
-        if (classes.isEmpty()) {
-            throw new RuntimeException("Empty class");
+    /**
+     * Reads the references between classes straight out of the class files, no class is parsed.
+     * In verify mode, they must be the references of the tree engine projected on the classes.
+     */
+    private EdgeCollector scanClasses() {
+        Consumer<EdgeCollector> scan = collector ->
+                new ConstantPoolInspector().inspectClasses(
+                        classes.sources(),
+                        collector,
+                        options.getThreads()
+                );
+        if (Constants.ENGINE_VERIFY.equals(options.getEngine())) {
+            return new EdgeCollector(verify(
+                    Constants.ENGINE_TREE,
+                    ConstantPoolInspector.classEdges(
+                            collect(Constants.ENGINE_TREE, this::inspectClassNodes).getEdges()
+                    ),
+                    CONSTANT_POOL_ENGINE,
+                    collect(CONSTANT_POOL_ENGINE, scan).getEdges()
+            ));
         }
+        return collect(CONSTANT_POOL_ENGINE, scan);
+    }
+
+    /**
+     * Inspects only the classes which changed since the cached run, the others reuse their cached edges.
+     */
+    private EdgeStore inspectIncrementally(Predicate<String> targetFilter) {
+        AnalysisCache cache = AnalysisCache.load(Path.of(options.getCache()));
+        ClassRepository targetClasses = classes;
+        Set<String> hits = cache.findHits(targetClasses);
+
+        classes = targetClasses.filter(name -> !hits.contains(name));
+        EdgeStore edges = classes.isEmpty() ? new EdgeStore() : inspectClasses().getEdges();
+        cache.update(classes, edges);
+        cache.addEdges(hits, edges);
+        classes = targetClasses;
 
-        return new ReferenceInspector().runThroughAllClassNodes(classes);
+        cache.retain(targetClasses.names(), targetFilter);
+        try {
+            cache.save();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        System.out.println(cache.getStatistics());
+        return edges;
+    }
+
+    /**
+     * Parses and inspects the classes a chunk at a time, a chunk growing until its ClassNodes
+     * take half of the heap budget. The ClassNodes are evicted once the chunk is inspected.
+     */
+    private void inspectWithinBudget(EdgeCollector collector) {
+        long classBudget = options.getMaxHeapBudget() / 2;
+        int batchSize = options.getThreads() * PARSE_BATCH_SIZE;
+        List<String> names = new ArrayList<>(classes.names());
+
+        ReferenceInspector inspector = new ReferenceInspector();
+        Map<String, ClassNode> chunk = new LinkedHashMap<>();
+        long chunkSize = 0;
+
+        for (int start = 0; start < names.size(); start += batchSize) {
+            List<String> batch = names.subList(start, Math.min(start + batchSize, names.size()));
+            classes.materialize(options.getThreads(), batch);
+            for (String name : batch) {
+                ClassNode classNode = classes.get(name);
+                if (classNode != null) {
+                    chunk.put(name, classNode);
+                    chunkSize += ClassRepository.estimateSize(classNode);
+                }
+            }
+
+            if (chunkSize >= classBudget) {
+                inspector.inspectClassNodes(chunk.values(), collector, options.getThreads());
+                classes.evict(chunk.keySet());
+                chunk.clear();
+                chunkSize = 0;
+            }
+        }
+        inspector.inspectClassNodes(chunk.values(), collector, options.getThreads());
+        classes.evict(chunk.keySet());
     }
 }
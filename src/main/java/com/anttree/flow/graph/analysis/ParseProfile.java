@@ -0,0 +1,32 @@
+package com.anttree.flow.graph.analysis;
+
+import org.objectweb.asm.ClassReader;
+
+/**
+ * ClassReader flags to be used for an analysis.
+ * Each analyzer picks the lightest profile which still holds what it inspects.
+ */
+public enum ParseProfile {
+
+    /**
+     * Instructions, members, signatures and class hierarchy only.
+     * Stack map frames and debug information (line numbers, local variables)
+     * are neither decompressed nor kept.
+     */
+    REFERENCES(ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG),
+
+    /**
+     * Everything, with the stack map frames expanded.
+     */
+    FULL(ClassReader.EXPAND_FRAMES);
+
+    private final int parsingOptions;
+
+    ParseProfile(int parsingOptions) {
+        this.parsingOptions = parsingOptions;
+    }
+
+    public int getParsingOptions() {
+        return parsingOptions;
+    }
+}
@@ -1,15 +1,28 @@
 package com.anttree.flow.graph.canvas;
 
+import com.anttree.flow.graph.model.EdgeKind;
+
 public class CFGOptions {
 
     private boolean omitAnonymousClasses = true;
 
+    // EdgeKind mask of the edges drawn
+    private int kinds = EdgeKind.ALL;
+
     public CFGOptions(
             boolean omitAnonymousClasses
     ) {
         this.omitAnonymousClasses = omitAnonymousClasses;
     }
 
+    public CFGOptions(
+            boolean omitAnonymousClasses,
+            int kinds
+    ) {
+        this.omitAnonymousClasses = omitAnonymousClasses;
+        this.kinds = kinds;
+    }
+
     public boolean isOmitAnonymousClasses() {
         return omitAnonymousClasses;
     }
@@ -17,4 +30,12 @@ public class CFGOptions {
     public void setOmitAnonymousClasses(boolean omitAnonymousClasses) {
         this.omitAnonymousClasses = omitAnonymousClasses;
     }
+
+    public int getKinds() {
+        return kinds;
+    }
+
+    public void setKinds(int kinds) {
+        this.kinds = kinds;
+    }
 }
@@ -1,15 +1,18 @@
 package com.anttree.flow.graph.canvas;
 
-import com.anttree.flow.graph.model.Component;
 import com.anttree.flow.graph.model.ComponentType;
+import com.anttree.flow.graph.model.EdgeStore;
+import com.anttree.flow.graph.model.GraphView;
 import com.anttree.flow.graph.model.Pair;
-import com.anttree.flow.graph.model.Reference;
 import com.anttree.flow.graph.utils.JarUtils;
 import com.anttree.flow.graph.utils.NodeUtils;
+import guru.nidi.graphviz.attribute.Attributes;
 import guru.nidi.graphviz.attribute.Color;
+import guru.nidi.graphviz.attribute.ForLink;
 import guru.nidi.graphviz.attribute.Rank;
 import guru.nidi.graphviz.engine.*;
 import guru.nidi.graphviz.model.MutableGraph;
+import guru.nidi.graphviz.model.MutableNode;
 
 import java.io.File;
 import java.util.*;
@@ -34,13 +37,58 @@ public class Graph {
         return Color.BLACK;
     }
 
-    private static String getName(Component component) {
-        return component.getOwner() + "." + component.getName();
+    /**
+     * Heavier edges (referred to more often) are drawn thicker, and kept shorter by dot.
+     */
+    private static Attributes<ForLink> getWeight(int weight) {
+        double penWidth = 1 + Math.log(weight) / Math.log(2);
+        return Attributes.attrs(
+                // dot only takes integer weights
+                Attributes.attr("weight", weight),
+                Attributes.attr("penwidth", Math.round(penWidth * 10) / 10.0)
+        );
     }
 
+    private static String getName(GraphView references, int node) {
+        return references.getSymbol(references.getOwnerId(node)) + "."
+                + references.getSymbol(references.getNameId(node));
+    }
+
+    /**
+     * Edge resolved to the names of its nodes, so that the edges are written in name order.
+     * The node IDs follow the order the symbols have been interned in, which the parallel
+     * inspection does not keep from one run to another.
+     */
+    private static final class NamedEdge {
+        final String source;
+        final int sourceType;
+        final String destination;
+        final int destinationType;
+        final int weight;
+
+        NamedEdge(GraphView references, int source, int destination, int weight) {
+            this.source = getName(references, source);
+            this.sourceType = references.getType(source);
+            this.destination = getName(references, destination);
+            this.destinationType = references.getType(destination);
+            this.weight = weight;
+        }
+    }
+
+    private static final Comparator<NamedEdge> NAME_ORDER = Comparator
+            .comparing((NamedEdge edge) -> edge.source)
+            .thenComparing(edge -> edge.destination)
+            .thenComparingInt(edge -> edge.sourceType)
+            .thenComparingInt(edge -> edge.destinationType);
+
+    private static final Comparator<Pair<String, String>> PAIR_ORDER = Comparator
+            .comparing((Pair<String, String> pair) -> pair.first)
+            .thenComparing(pair -> pair.second);
+
     public static void draw(
             String name,
-            Set<Reference> references,
+            GraphView references,
+            CFGOptions CFGOptions,
             String outputPath
     ) {
         //Graphviz.useDefaultEngines();
@@ -59,21 +107,29 @@ public class Graph {
                     .add(Rank.dir(TOP_TO_BOTTOM))
                     .graphAttrs().add(Rank.sep(2.0));
 
-            references.stream().filter(ref ->
-                    // flow from class to class are not included
-                    ref.getSrc().getType() != ComponentType.CLASS &&
-                    ref.getDest().getType() != ComponentType.CLASS
-            ).map(ref -> mutNode(getName(ref.getSrc()))
-                    .add(getColor(ref.getSrc().getType()))
-                    .addLink(mutNode(
-                            getName(ref.getDest())
-                    ).add(getColor(
-                            ref.getDest().getType())
-                    ))
-            ).forEach(node -> {
+            List<NamedEdge> edges = new ArrayList<>();
+            references.forEachWeightedEdge(CFGOptions.getKinds(), (source, destination, weight, kinds) -> {
+                // flow from class to class are not included
+                if (references.getType(source) == ComponentType.CLASS ||
+                    references.getType(destination) == ComponentType.CLASS
+                ) {
+                    return;
+                }
+                edges.add(new NamedEdge(references, source, destination, weight));
+            });
+            edges.sort(NAME_ORDER);
+
+            for (NamedEdge edge : edges) {
+                MutableNode node = mutNode(edge.source)
+                        .add(getColor(edge.sourceType))
+                        .addLink(to(mutNode(
+                                edge.destination
+                        ).add(getColor(
+                                edge.destinationType)
+                        )).with(getWeight(edge.weight)));
                 //node.add(getColor(ComponentType.CLASS));
                 graph.add(node);
-            });
+            }
 
             graph.nodes().size();
             graph.edges().size();
@@ -93,7 +149,7 @@ public class Graph {
 
     public static void drawClassOnly(
             String name,
-            Set<Reference> references,
+            GraphView references,
             CFGOptions CFGOptions,
             String outputPath
     ) {
@@ -112,27 +168,47 @@ public class Graph {
                     .add(Rank.dir(TOP_TO_BOTTOM))
                     .graphAttrs().add(Rank.sep(2.0));
 
-            references.stream().map(ref -> new Pair<>(
-                    ref.getSrc().getOwner(),
-                    ref.getDest().getOwner()
-            )).filter(p ->
-                    !p.first.equals(p.second)
-            ).filter(p ->
-                    !JarUtils.isDefaultClassName(p.first) &&
-                    !JarUtils.isDefaultClassName(p.second)
-            ).map(p -> {
-                if (!CFGOptions.isOmitAnonymousClasses() ||
-                    !(p.first.contains("$") || p.second.contains("$"))
-                ) {
-                    return p;
+            // class pairs are deduplicated on the owner IDs, names are only resolved once per pair
+            EdgeStore classPairs = new EdgeStore();
+            references.forEachWeightedEdge(CFGOptions.getKinds(), (source, destination, weight, kinds) -> {
+                int sourceOwner = references.getOwnerId(source);
+                int destinationOwner = references.getOwnerId(destination);
+                if (sourceOwner != destinationOwner) {
+                    classPairs.add(
+                            EdgeStore.edge(sourceOwner, destinationOwner),
+                            weight,
+                            kinds
+                    );
                 }
-                return new Pair<>(
-                        NodeUtils.omitAnonymousClass(p.first),
-                        NodeUtils.omitAnonymousClass(p.second)
+            });
+
+            // the weights of the pairs merged together by the anonymous class omission are summed,
+            // the pairs are written in name order, whatever the order the classes were inspected in
+            Map<Pair<String, String>, Integer> weights = new TreeMap<>(PAIR_ORDER);
+            classPairs.forEach((pair, weight, kinds) -> {
+                Pair<String, String> p = new Pair<>(
+                        references.getSymbol(EdgeStore.source(pair)),
+                        references.getSymbol(EdgeStore.destination(pair))
                 );
-            }).map(ref -> mutNode(ref.first)
-                    .addLink(mutNode(ref.second))
-            ).forEach(node -> {
+                if (JarUtils.isDefaultClassName(p.first) ||
+                    JarUtils.isDefaultClassName(p.second)
+                ) {
+                    return;
+                }
+                if (CFGOptions.isOmitAnonymousClasses() &&
+                    (p.first.contains("$") || p.second.contains("$"))
+                ) {
+                    p = new Pair<>(
+                            NodeUtils.omitAnonymousClass(p.first),
+                            NodeUtils.omitAnonymousClass(p.second)
+                    );
+                }
+                weights.merge(p, weight, (a, b) -> (int) Math.min((long) a + b, Integer.MAX_VALUE));
+            });
+
+            weights.forEach((ref, weight) -> {
+                MutableNode node = mutNode(ref.first)
+                        .addLink(to(mutNode(ref.second)).with(getWeight(weight)));
                 node.add(getColor(ComponentType.CLASS));
                 graph.add(node);
             });
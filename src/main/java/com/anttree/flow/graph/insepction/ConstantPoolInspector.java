@@ -0,0 +1,285 @@
+package com.anttree.flow.graph.insepction;
+
+import com.anttree.flow.graph.analysis.ClassSource;
+import com.anttree.flow.graph.model.ComponentType;
+import com.anttree.flow.graph.model.EdgeCollector;
+import com.anttree.flow.graph.model.EdgeKind;
+import com.anttree.flow.graph.model.EdgeStore;
+import com.anttree.flow.graph.utils.ParallelUtils;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Class level reference extraction, reading the class files in place instead of visiting them.
+ * <p>
+ * Only the references from a class to the other classes are emitted, as edges between
+ * the class components, with the counts and kinds the member level engines give them
+ * once summed per pair of classes : the super class, interfaces and inner classes,
+ * the field types, and the owners of the field and method instructions. The types,
+ * constants and signatures are left out, the member level engines record them as
+ * components of the inspected class itself. The graph drawn on the classes only is the same.
+ * <p>
+ * The constant pool is indexed by the ClassReader constructor, then the member tables
+ * and attributes are walked without any visitor. The bytecode is only stepped through,
+ * to count the uses of each field and method constant, and each used constant is
+ * resolved to its owner once per class.
+ * <p>
+ * Works on class files only, see {@link ClassSource#isClassFile()}.
+ */
+public class ConstantPoolInspector extends InspectionImplements {
+
+    private static final String CODE = "Code";
+    private static final String INNER_CLASSES = "InnerClasses";
+
+    // Opcodes which ASM folds into others, hence missing from Opcodes
+    private static final int LDC_W = 19;
+    private static final int LDC2_W = 20;
+    private static final int WIDE = 196;
+    private static final int GOTO_W = 200;
+    private static final int JSR_W = 201;
+
+    public ConstantPoolInspector() {
+        super();
+    }
+
+    public EdgeStore runThroughAllClasses(
+            Collection<ClassSource> classSources,
+            EdgeCollector collector,
+            int threads
+    ) {
+        inspectClasses(classSources, collector, threads);
+
+        return collector.getEdges();
+    }
+
+    /**
+     * Inspects the classes into the collector, without completing it.
+     */
+    public void inspectClasses(
+            Collection<ClassSource> classSources,
+            EdgeCollector collector,
+            int threads
+    ) {
+        List<ClassSource> sources = new ArrayList<>(classSources);
+
+        ThreadLocal<EdgeStore> buffers = ThreadLocal.withInitial(EdgeStore::new);
+        ParallelUtils.forEach(threads, sources.size(), index -> {
+            EdgeStore buffer = buffers.get();
+            try {
+                inspectClass(sources.get(index), buffer);
+                collector.merge(buffer);
+            } catch (Exception e) {
+                //Ignore the failed classes if they are preserved
+                e.printStackTrace();
+                buffer.clear();
+            }
+        });
+    }
+
+    /**
+     * Projects member level edges onto the classes, as this engine emits them :
+     * each edge goes from the class of its source to the class of its destination,
+     * and the edges within a class are dropped.
+     */
+    public static EdgeStore classEdges(EdgeStore edges) {
+        EdgeStore classEdges = new EdgeStore();
+        edges.forEach((edge, count, kinds) -> {
+            int sourceOwner = SYMBOLS.getComponentOwner(EdgeStore.source(edge));
+            int destinationOwner = SYMBOLS.getComponentOwner(EdgeStore.destination(edge));
+            if (sourceOwner != destinationOwner) {
+                classEdges.add(EdgeStore.edge(
+                        SYMBOLS.component(sourceOwner, sourceOwner, ComponentType.CLASS),
+                        SYMBOLS.component(destinationOwner, destinationOwner, ComponentType.CLASS)
+                ), count, kinds);
+            }
+        });
+        return classEdges;
+    }
+
+    /**
+     * Adds the references of the class to the other classes.
+     */
+    public void inspectClass(ClassSource classSource, EdgeStore edges) throws IOException {
+        ClassReader reader = new ClassReader(classSource.read());
+        char[] buffer = new char[reader.getMaxStringLength()];
+        int source = classComponent(reader.getClassName());
+
+        for (String interfaceName : reader.getInterfaces()) {
+            add(source, interfaceName, 1, EdgeKind.IMPLEMENTS, edges);
+        }
+        String superName = reader.getSuperName();
+        if (superName != null) {
+            add(source, superName, 1, EdgeKind.EXTENDS, edges);
+        }
+
+        // access, this, super, interfaces
+        int offset = reader.header + 6;
+        offset += 2 + 2 * reader.readUnsignedShort(offset);
+
+        int fieldCount = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int field = 0; field < fieldCount; field++) {
+            add(source, reader.readUTF8(offset + 4, buffer), 1, EdgeKind.SIGNATURE, edges);
+            offset = skipAttributes(reader, offset + 6);
+        }
+
+        // Uses and kinds of each field and method constant, by constant pool index
+        int[] uses = new int[reader.getItemCount()];
+        int[] kinds = new int[reader.getItemCount()];
+
+        int methodCount = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int method = 0; method < methodCount; method++) {
+            offset += 6;
+            int attributeCount = reader.readUnsignedShort(offset);
+            offset += 2;
+            for (int attribute = 0; attribute < attributeCount; attribute++) {
+                int length = reader.readInt(offset + 2);
+                if (CODE.equals(reader.readUTF8(offset, buffer))) {
+                    // max stack, max locals, code length
+                    int code = offset + 14;
+                    instructionInspection(reader, code, code + reader.readInt(offset + 10), uses, kinds);
+                }
+                offset += 6 + length;
+            }
+        }
+
+        int attributeCount = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int attribute = 0; attribute < attributeCount; attribute++) {
+            int length = reader.readInt(offset + 2);
+            if (INNER_CLASSES.equals(reader.readUTF8(offset, buffer))) {
+                int innerClassCount = reader.readUnsignedShort(offset + 6);
+                for (int innerClass = 0; innerClass < innerClassCount; innerClass++) {
+                    // inner class, outer class, inner name, access
+                    String innerName = reader.readClass(offset + 8 + 8 * innerClass, buffer);
+                    add(source, innerName, 1, EdgeKind.INNER, edges);
+                }
+            }
+            offset += 6 + length;
+        }
+
+        for (int item = 1; item < uses.length; item++) {
+            if (uses[item] > 0) {
+                // The class of the field or method constant
+                add(source, reader.readClass(reader.getItem(item), buffer), uses[item], kinds[item], edges);
+            }
+        }
+    }
+
+    private static void add(int source, String referencedClassName, int count, int kinds, EdgeStore edges) {
+        int destination = classComponent(referencedClassName);
+        if (destination != source) {
+            edges.add(EdgeStore.edge(source, destination), count, kinds);
+        }
+    }
+
+    /**
+     * Counts the uses of the field and method constants in the bytecode [code, end).
+     */
+    private static void instructionInspection(
+            ClassReader reader,
+            int code,
+            int end,
+            int[] uses,
+            int[] kinds
+    ) {
+        int offset = code;
+        while (offset < end) {
+            int opcode = reader.readByte(offset);
+            if (opcode >= Opcodes.GETSTATIC && opcode <= Opcodes.INVOKEINTERFACE) {
+                int item = reader.readUnsignedShort(offset + 1);
+                uses[item]++;
+                kinds[item] |= instructionKind(opcode);
+            }
+            int size = instructionSize(reader, code, offset, opcode);
+            if (size <= 0) {
+                throw new IllegalArgumentException("Invalid instruction at " + (offset - code));
+            }
+            offset += size;
+        }
+    }
+
+    /**
+     * Returns the size in bytes of the instruction, operands included.
+     */
+    private static int instructionSize(ClassReader reader, int code, int offset, int opcode) {
+        switch (opcode) {
+            case Opcodes.BIPUSH:
+            case Opcodes.LDC:
+            case Opcodes.ILOAD:
+            case Opcodes.LLOAD:
+            case Opcodes.FLOAD:
+            case Opcodes.DLOAD:
+            case Opcodes.ALOAD:
+            case Opcodes.ISTORE:
+            case Opcodes.LSTORE:
+            case Opcodes.FSTORE:
+            case Opcodes.DSTORE:
+            case Opcodes.ASTORE:
+            case Opcodes.RET:
+            case Opcodes.NEWARRAY:
+                return 2;
+            case Opcodes.SIPUSH:
+            case LDC_W:
+            case LDC2_W:
+            case Opcodes.IINC:
+            case Opcodes.GETSTATIC:
+            case Opcodes.PUTSTATIC:
+            case Opcodes.GETFIELD:
+            case Opcodes.PUTFIELD:
+            case Opcodes.INVOKEVIRTUAL:
+            case Opcodes.INVOKESPECIAL:
+            case Opcodes.INVOKESTATIC:
+            case Opcodes.NEW:
+            case Opcodes.ANEWARRAY:
+            case Opcodes.CHECKCAST:
+            case Opcodes.INSTANCEOF:
+            case Opcodes.IFNULL:
+            case Opcodes.IFNONNULL:
+                return 3;
+            case Opcodes.MULTIANEWARRAY:
+                return 4;
+            case Opcodes.INVOKEINTERFACE:
+            case Opcodes.INVOKEDYNAMIC:
+            case GOTO_W:
+            case JSR_W:
+                return 5;
+            case WIDE:
+                return reader.readByte(offset + 1) == Opcodes.IINC ? 6 : 4;
+            case Opcodes.TABLESWITCH: {
+                // Operands aligned on 4 bytes from the start of the code
+                int operands = code + ((offset - code + 4) & ~3);
+                int low = reader.readInt(operands + 4);
+                int high = reader.readInt(operands + 8);
+                return operands + 12 + 4 * (high - low + 1) - offset;
+            }
+            case Opcodes.LOOKUPSWITCH: {
+                int operands = code + ((offset - code + 4) & ~3);
+                return operands + 8 + 8 * reader.readInt(operands + 4) - offset;
+            }
+            default:
+                if (opcode >= Opcodes.IFEQ && opcode <= Opcodes.JSR) {
+                    return 3;
+                }
+                if (opcode > JSR_W) {
+                    throw new IllegalArgumentException("Invalid opcode " + opcode);
+                }
+                return 1;
+        }
+    }
+
+    private static int skipAttributes(ClassReader reader, int offset) {
+        int attributeCount = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int attribute = 0; attribute < attributeCount; attribute++) {
+            offset += 6 + reader.readInt(offset + 2);
+        }
+        return offset;
+    }
+}
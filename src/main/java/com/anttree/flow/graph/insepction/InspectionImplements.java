@@ -2,200 +2,240 @@ package com.anttree.flow.graph.insepction;
 
 import com.anttree.flow.graph.model.Component;
 import com.anttree.flow.graph.model.ComponentType;
-import com.anttree.flow.graph.model.Reference;
+import com.anttree.flow.graph.model.EdgeKind;
+import com.anttree.flow.graph.model.EdgeStore;
+import com.anttree.flow.graph.model.SymbolTable;
 import com.anttree.flow.graph.utils.NodeUtils;
-import com.anttree.flow.graph.utils.SafeIterator;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.*;
 
 import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
 
 public class InspectionImplements {
 
+    protected static final SymbolTable SYMBOLS = SymbolTable.global();
+
+    // Returned by the component factories when the instruction refers to no component
+    protected static final int NO_COMPONENT = -1;
+
     public InspectionImplements() {
         // Default constructor
     }
 
     public Component getComponentIfAvailable(ClassNode classNode, AbstractInsnNode node) {
-        if (node.getOpcode() == Opcodes.CHECKCAST ||
-            node.getOpcode() == Opcodes.INSTANCEOF ||
-            node.getOpcode() == Opcodes.NEW ||
-            node.getOpcode() == Opcodes.ANEWARRAY
-        ) {
-            TypeInsnNode castedNode = (TypeInsnNode) node;
-            return new Component(
-                    NodeUtils.normalizeClassName(classNode.name),
-                    NodeUtils.normalizeClassName(castedNode.desc),
-                    ComponentType.CLASS
-            );
-        }
-        if (node.getOpcode() == Opcodes.MULTIANEWARRAY) {
-            MultiANewArrayInsnNode castedNode = (MultiANewArrayInsnNode) node;
-            return new Component(
-                    NodeUtils.normalizeClassName(classNode.name),
-                    NodeUtils.normalizeClassName(castedNode.desc),
-                    ComponentType.CLASS
-            );
+        int component = getComponentIdIfAvailable(classNode, node);
+        return component != NO_COMPONENT ? SYMBOLS.getComponent(component) : null;
+    }
+
+    /**
+     * Returns the component the instruction refers to, or {@link #NO_COMPONENT}.
+     * A single switch on the node type, the opcodes of a type share the same node class.
+     */
+    public int getComponentIdIfAvailable(ClassNode classNode, AbstractInsnNode node) {
+        switch (node.getType()) {
+            case AbstractInsnNode.TYPE_INSN:
+                // NEW, ANEWARRAY, CHECKCAST and INSTANCEOF
+                return typeComponent(classNode.name, ((TypeInsnNode) node).desc);
+            case AbstractInsnNode.MULTIANEWARRAY_INSN:
+                return typeComponent(classNode.name, ((MultiANewArrayInsnNode) node).desc);
+            case AbstractInsnNode.LDC_INSN:
+                return constantComponent(classNode.name, ((LdcInsnNode) node).cst);
+            case AbstractInsnNode.METHOD_INSN:
+                MethodInsnNode methodInsnNode = (MethodInsnNode) node;
+                return methodComponent(methodInsnNode.owner, methodInsnNode.name, methodInsnNode.desc);
+            case AbstractInsnNode.FIELD_INSN:
+                FieldInsnNode fieldInsnNode = (FieldInsnNode) node;
+                return fieldComponent(fieldInsnNode.owner, fieldInsnNode.name, fieldInsnNode.desc);
+            default:
+                return NO_COMPONENT;
         }
-        if (node instanceof LdcInsnNode) {
-            LdcInsnNode castedNode = (LdcInsnNode) node;
-            if (!(castedNode.cst instanceof Type)) {
-                return null;
-            }
-            Type type = (Type) castedNode.cst;
-            if (type.getSort() != Type.OBJECT && type.getSort() != Type.ARRAY) {
-                return null;
-            }
-            return new Component(
-                    NodeUtils.normalizeClassName(classNode.name),
-                    NodeUtils.normalizeClassName(type.getClassName()),
-                    ComponentType.CLASS
-            );
+    }
+
+    /**
+     * Returns the {@link EdgeKind} of the reference made by an instruction.
+     */
+    protected static int instructionKind(int opcode) {
+        switch (opcode) {
+            case Opcodes.NEW:
+            case Opcodes.ANEWARRAY:
+            case Opcodes.MULTIANEWARRAY:
+                return EdgeKind.NEW;
+            case Opcodes.CHECKCAST:
+            case Opcodes.INSTANCEOF:
+                return EdgeKind.TYPE_CHECK;
+            case Opcodes.LDC:
+                return EdgeKind.LDC_CLASS;
+            case Opcodes.GETFIELD:
+            case Opcodes.PUTFIELD:
+            case Opcodes.GETSTATIC:
+            case Opcodes.PUTSTATIC:
+                return EdgeKind.FIELD_ACCESS;
+            case Opcodes.INVOKEVIRTUAL:
+            case Opcodes.INVOKESPECIAL:
+            case Opcodes.INVOKESTATIC:
+            case Opcodes.INVOKEINTERFACE:
+                return EdgeKind.INVOKE;
+            default:
+                return EdgeKind.NONE;
         }
-        if (node instanceof MethodInsnNode) {
-            MethodInsnNode castedNode = (MethodInsnNode) node;
-            return new Component(
-                    NodeUtils.normalizeClassName(castedNode.owner),
-                    castedNode.name + castedNode.desc,
-                    ComponentType.METHOD
-            );
+    }
+
+    //+------------------------------------------------------------------------------------------+
+    // Component factories, shared by every inspection engine so that they emit the same references
+    // They return component IDs of the global SymbolTable
+    //+------------------------------------------------------------------------------------------+
+    protected static int typeComponent(String className, String typeDescriptor) {
+        return SYMBOLS.component(
+                SYMBOLS.className(className),
+                SYMBOLS.className(typeDescriptor),
+                ComponentType.CLASS
+        );
+    }
+
+    protected static int constantComponent(String className, Object constant) {
+        if (!(constant instanceof Type)) {
+            return NO_COMPONENT;
         }
-        if (node instanceof FieldInsnNode) {
-            FieldInsnNode castedNode = (FieldInsnNode) node;
-            return new Component(
-                    NodeUtils.normalizeClassName(castedNode.owner),
-                    NodeUtils.normalizeClassName(castedNode.desc) + ":" + castedNode.name,
-                    ComponentType.FIELD
-            );
+        Type type = (Type) constant;
+        if (type.getSort() != Type.OBJECT && type.getSort() != Type.ARRAY) {
+            return NO_COMPONENT;
         }
-        return null;
+        return SYMBOLS.component(
+                SYMBOLS.className(className),
+                SYMBOLS.className(type.getClassName()),
+                ComponentType.CLASS
+        );
+    }
+
+    protected static int methodComponent(String owner, String name, String descriptor) {
+        return SYMBOLS.component(
+                SYMBOLS.className(owner),
+                SYMBOLS.method(name, descriptor),
+                ComponentType.METHOD
+        );
+    }
+
+    protected static int fieldComponent(String owner, String name, String descriptor) {
+        return SYMBOLS.component(
+                SYMBOLS.className(owner),
+                SYMBOLS.field(name, descriptor),
+                ComponentType.FIELD
+        );
+    }
+
+    protected static int classComponent(String className) {
+        int classId = SYMBOLS.className(className);
+        return SYMBOLS.component(classId, classId, ComponentType.CLASS);
+    }
+
+    protected static void methodSignatureInspection(
+            String className,
+            String methodName,
+            String methodDescriptor,
+            String methodSignature,
+            EdgeStore edges
+    ) {
+        int source = methodComponent(className, methodName, methodDescriptor);
+
+        new HashSet<String>() {{
+            addAll(NodeUtils.getClassNamesFromMethodDescriptor(methodDescriptor));
+            addAll(NodeUtils.getGenericTypesInSignature(methodSignature));
+        }}.forEach(name -> edges.add(
+                source,
+                typeComponent(className, name),
+                EdgeKind.SIGNATURE
+        ));
+    }
+
+    protected static void fieldDeclarationInspection(
+            String className,
+            String fieldName,
+            String fieldDescriptor,
+            EdgeStore edges
+    ) {
+        int source = fieldComponent(className, fieldName, fieldDescriptor);
+
+        int typeId = SYMBOLS.className(fieldDescriptor);
+        int destination = SYMBOLS.component(typeId, typeId, ComponentType.FIELD);
+
+        edges.add(source, destination, EdgeKind.SIGNATURE);
+    }
+
+    protected static void classInspection(
+            String className,
+            String referencedClassName,
+            int kind,
+            EdgeStore edges
+    ) {
+        int source = classComponent(className);
+        int destination = classComponent(referencedClassName);
+
+        edges.add(source, destination, kind);
     }
 
     protected void methodInspection(
             ClassNode classNode,
             MethodNode methodNode,
-            Set<Reference> references
+            EdgeStore edges
     ) {
         if (methodNode.instructions != null) {
-            instructionInspection(classNode, methodNode, references);
+            instructionInspection(classNode, methodNode, edges);
         }
-        new HashSet<String>() {{
-            addAll(NodeUtils.getClassNamesFromMethodDescriptor(methodNode.desc));
-            addAll(NodeUtils.getGenericTypesInSignature(methodNode.signature));
-        }}.forEach(name -> references.add(new Reference(
-                new Component( // Source component
-                        NodeUtils.normalizeClassName(classNode.name),
-                        methodNode.name + methodNode.desc,
-                        ComponentType.METHOD
-                ),
-                new Component( // Destination component
-                        NodeUtils.normalizeClassName(classNode.name),
-                        NodeUtils.normalizeClassName(name),
-                        ComponentType.CLASS
-                )
-        )));
+        methodSignatureInspection(
+                classNode.name,
+                methodNode.name,
+                methodNode.desc,
+                methodNode.signature,
+                edges
+        );
     }
 
     protected void instructionInspection(
             ClassNode classNode,
             MethodNode methodNode,
-            Set<Reference> references
+            EdgeStore edges
     ) {
-        Component source = new Component(
-                NodeUtils.normalizeClassName(classNode.name),
-                methodNode.name + methodNode.desc,
-                ComponentType.METHOD
-        );
+        int source = methodComponent(classNode.name, methodNode.name, methodNode.desc);
 
-        new SafeIterator<AbstractInsnNode>(n -> {
-            Component destination = getComponentIfAvailable(classNode, n);
-            if (destination == null) {
-                return;
+        // Walks the linked list in place, the scan allocates nothing but new edges
+        for (AbstractInsnNode n = methodNode.instructions.getFirst(); n != null; n = n.getNext()) {
+            int destination = getComponentIdIfAvailable(classNode, n);
+            if (destination != NO_COMPONENT) {
+                edges.add(source, destination, instructionKind(n.getOpcode()));
             }
-            references.add(new Reference(source, destination));
-        }).over(List.of(methodNode.instructions.toArray()));
+        }
     }
 
     protected void fieldInspection(
             ClassNode classNode,
             FieldNode fieldNode,
-            Set<Reference> references
+            EdgeStore edges
     ) {
-        Component source = new Component(
-                NodeUtils.normalizeClassName(classNode.name),
-                NodeUtils.normalizeClassName(fieldNode.desc) + ":" + fieldNode.name,
-                ComponentType.FIELD
-        );
-
-        Component destination = new Component(
-                NodeUtils.normalizeClassName(fieldNode.desc),
-                NodeUtils.normalizeClassName(fieldNode.desc),
-                ComponentType.FIELD
-        );
-
-        references.add(new Reference(source, destination));
+        fieldDeclarationInspection(classNode.name, fieldNode.name, fieldNode.desc, edges);
     }
 
     protected void innerClassInspection(
             ClassNode classNode,
             InnerClassNode innerClassNode,
-            Set<Reference> references
+            EdgeStore edges
     ) {
-        Component source = new Component(
-                NodeUtils.normalizeClassName(classNode.name),
-                NodeUtils.normalizeClassName(classNode.name),
-                ComponentType.CLASS
-        );
-
-        Component destination = new Component(
-                NodeUtils.normalizeClassName(innerClassNode.name),
-                NodeUtils.normalizeClassName(innerClassNode.name),
-                ComponentType.CLASS
-        );
-
-        references.add(new Reference(source, destination));
+        classInspection(classNode.name, innerClassNode.name, EdgeKind.INNER, edges);
     }
 
     protected void interfaceInspection(
             ClassNode classNode,
             String interfaceName,
-            Set<Reference> references
+            EdgeStore edges
     ) {
-        Component source = new Component(
-                NodeUtils.normalizeClassName(classNode.name),
-                NodeUtils.normalizeClassName(classNode.name),
-                ComponentType.CLASS
-        );
-
-        Component destination = new Component(
-                NodeUtils.normalizeClassName(interfaceName),
-                NodeUtils.normalizeClassName(interfaceName),
-                ComponentType.CLASS
-        );
-
-        references.add(new Reference(source, destination));
+        classInspection(classNode.name, interfaceName, EdgeKind.IMPLEMENTS, edges);
     }
 
     protected void superClassInspection(
             ClassNode classNode,
             String superClassName,
-            Set<Reference> references
+            EdgeStore edges
     ) {
-        Component source = new Component(
-                NodeUtils.normalizeClassName(classNode.name),
-                NodeUtils.normalizeClassName(classNode.name),
-                ComponentType.CLASS
-        );
-
-        Component destination = new Component(
-                NodeUtils.normalizeClassName(superClassName),
-                NodeUtils.normalizeClassName(superClassName),
-                ComponentType.CLASS
-        );
-
-        references.add(new Reference(source, destination));
+        classInspection(classNode.name, superClassName, EdgeKind.EXTENDS, edges);
     }
 }
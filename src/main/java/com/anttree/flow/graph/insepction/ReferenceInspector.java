@@ -1,59 +1,179 @@
 package com.anttree.flow.graph.insepction;
 
-import com.anttree.flow.graph.model.Reference;
+import com.anttree.flow.graph.model.EdgeCollector;
+import com.anttree.flow.graph.model.EdgeStore;
+import com.anttree.flow.graph.utils.ParallelUtils;
 import com.anttree.flow.graph.utils.SafeIterator;
 import org.objectweb.asm.tree.*;
 
-import java.util.HashMap;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 public class ReferenceInspector extends InspectionImplements {
 
-    Set<Reference> references = ConcurrentHashMap.newKeySet();
+    // Instructions over which a class is split by method, so that a few huge classes do not serialize the pool
+    private static final int SLICE_INSTRUCTIONS = 4096;
+
+    // Local buffer of the class being inspected, merged into the collector once the class is done
+    EdgeStore edges = new EdgeStore();
 
     public ReferenceInspector() {
         super();
     }
 
-    public Set<Reference> runThroughClassNode(ClassNode classNode) {
-        references.clear();
+    public EdgeStore runThroughClassNode(ClassNode classNode) {
+        return runThroughClassNode(classNode, new EdgeCollector());
+    }
+
+    public EdgeStore runThroughClassNode(ClassNode classNode, EdgeCollector collector) {
+        edges.clear();
 
         new SafeIterator<MethodNode>(m ->
-            instructionInspection(classNode, m, references)
+            instructionInspection(classNode, m, edges)
         ).over(classNode.methods);
 
-        return references;
+        collector.merge(edges);
+        return collector.getEdges();
+    }
+
+    public EdgeStore runThroughAllClassNodes(
+            Map<String, ClassNode> classNodes
+    ) {
+        return runThroughAllClassNodes(classNodes, new EdgeCollector());
+    }
+
+    public EdgeStore runThroughAllClassNodes(
+            Map<String, ClassNode> classNodes,
+            EdgeCollector collector
+    ) {
+        return runThroughAllClassNodes(classNodes, collector, 1);
+    }
+
+    public EdgeStore runThroughAllClassNodes(
+            Map<String, ClassNode> classNodes,
+            EdgeCollector collector,
+            int threads
+    ) {
+        inspectClassNodes(classNodes.values(), collector, threads);
+
+        return collector.getEdges();
     }
 
-    public Set<Reference> runThroughAllClassNodes(
-            HashMap<String, ClassNode> classNodes
+    /**
+     * Inspects the classes into the collector, without completing it,
+     * so that the classes can be inspected a chunk at a time.
+     */
+    public void inspectClassNodes(
+            Collection<ClassNode> classNodes,
+            EdgeCollector collector
     ) {
-        references.clear();
+        edges.clear();
 
         new SafeIterator<ClassNode>(c -> {
             new SafeIterator<MethodNode>(m ->
-                methodInspection(c, m, references)
+                methodInspection(c, m, edges)
             ).over(c.methods);
 
-            new SafeIterator<FieldNode>(f ->
-                fieldInspection(c, f, references)
-            ).over(c.fields);
+            memberInspection(c, edges);
 
-            new SafeIterator<InnerClassNode>(i ->
-                innerClassInspection(c, i, references)
-            ).over(c.innerClasses);
+            collector.merge(edges);
+        }).over(classNodes);
+    }
+
+    /**
+     * Inspects the classes over a work-stealing pool of the given parallelism.
+     * Every class is a task, and the classes of more than {@link #SLICE_INSTRUCTIONS}
+     * instructions are split by method. Each worker records its tasks in a buffer
+     * of its own, merged into the collector at the end of every task.
+     */
+    public void inspectClassNodes(
+            Collection<ClassNode> classNodes,
+            EdgeCollector collector,
+            int threads
+    ) {
+        if (threads <= 1) {
+            inspectClassNodes(classNodes, collector);
+            return;
+        }
 
-            new SafeIterator<String>(s ->
-                interfaceInspection(c, s, references)
-            ).over(c.interfaces);
+        List<Slice> slices = new ArrayList<>();
+        for (ClassNode classNode : classNodes) {
+            slice(classNode, slices);
+        }
+
+        ThreadLocal<EdgeStore> buffers = ThreadLocal.withInitial(EdgeStore::new);
+        ParallelUtils.forEach(threads, slices.size(), index -> {
+            Slice slice = slices.get(index);
+            EdgeStore buffer = buffers.get();
+
+            new SafeIterator<MethodNode>(m ->
+                methodInspection(slice.classNode, m, buffer)
+            ).over(slice.classNode.methods.subList(slice.fromMethod, slice.toMethod));
 
-            if (c.superName != null) {
-                superClassInspection(c, c.superName, references);
+            if (slice.fromMethod == 0) {
+                memberInspection(slice.classNode, buffer);
             }
 
-        }).over(classNodes.values());
+            collector.merge(buffer);
+        });
+    }
+
+    /**
+     * Inspects the fields, inner classes, interfaces and super class.
+     */
+    private void memberInspection(ClassNode c, EdgeStore edges) {
+        new SafeIterator<FieldNode>(f ->
+            fieldInspection(c, f, edges)
+        ).over(c.fields);
+
+        new SafeIterator<InnerClassNode>(i ->
+            innerClassInspection(c, i, edges)
+        ).over(c.innerClasses);
+
+        new SafeIterator<String>(s ->
+            interfaceInspection(c, s, edges)
+        ).over(c.interfaces);
+
+        if (c.superName != null) {
+            superClassInspection(c, c.superName, edges);
+        }
+    }
 
-        return references;
+    //+------------------------------------------------------------------------------------------+
+    // Parallel inspection tasks
+    //+------------------------------------------------------------------------------------------+
+    /**
+     * Methods [fromMethod, toMethod) of a class, the first slice of a class also inspects its members.
+     */
+    private static final class Slice {
+        final ClassNode classNode;
+        final int fromMethod;
+        final int toMethod;
+
+        Slice(ClassNode classNode, int fromMethod, int toMethod) {
+            this.classNode = classNode;
+            this.fromMethod = fromMethod;
+            this.toMethod = toMethod;
+        }
+    }
+
+    private static void slice(ClassNode classNode, List<Slice> slices) {
+        int from = 0;
+        int instructions = 0;
+        for (int index = 0; index < classNode.methods.size(); index++) {
+            MethodNode methodNode = classNode.methods.get(index);
+            instructions += methodNode.instructions != null ? methodNode.instructions.size() : 0;
+            if (instructions >= SLICE_INSTRUCTIONS) {
+                slices.add(new Slice(classNode, from, index + 1));
+                from = index + 1;
+                instructions = 0;
+            }
+        }
+        // The last methods, or the class without methods, which still has members
+        if (from < classNode.methods.size() || from == 0) {
+            slices.add(new Slice(classNode, from, classNode.methods.size()));
+        }
     }
 }
@@ -0,0 +1,230 @@
+package com.anttree.flow.graph.insepction;
+
+import com.anttree.flow.graph.analysis.ClassSource;
+import com.anttree.flow.graph.model.EdgeCollector;
+import com.anttree.flow.graph.model.EdgeKind;
+import com.anttree.flow.graph.model.EdgeStore;
+import com.anttree.flow.graph.utils.ParallelUtils;
+import com.anttree.flow.graph.utils.SafeIterator;
+import org.objectweb.asm.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reference extraction engine working straight on the ClassReader callbacks.
+ * <p>
+ * Emits the same references as {@link ReferenceInspector}, without building
+ * the ClassNode / MethodNode / InsnList trees, so no class stays resident
+ * once it has been visited.
+ */
+public class StreamingReferenceInspector extends InspectionImplements {
+
+    // Local buffer of the class being visited, merged into the collector once the class is done
+    EdgeStore edges = new EdgeStore();
+
+    private final int parsingOptions;
+
+    public StreamingReferenceInspector(int parsingOptions) {
+        super();
+        this.parsingOptions = parsingOptions;
+    }
+
+    public EdgeStore runThroughClass(ClassSource classSource) {
+        return runThroughClass(classSource, new EdgeCollector());
+    }
+
+    public EdgeStore runThroughClass(ClassSource classSource, EdgeCollector collector) {
+        edges.clear();
+
+        accept(classSource, new ClassInspector(false));
+
+        collector.merge(edges);
+        return collector.getEdges();
+    }
+
+    public EdgeStore runThroughAllClasses(Collection<ClassSource> classSources) {
+        return runThroughAllClasses(classSources, new EdgeCollector());
+    }
+
+    public EdgeStore runThroughAllClasses(
+            Collection<ClassSource> classSources,
+            EdgeCollector collector
+    ) {
+        inspectClasses(classSources, collector);
+
+        return collector.getEdges();
+    }
+
+    /**
+     * Inspects the classes into the collector, without completing it.
+     */
+    public void inspectClasses(
+            Collection<ClassSource> classSources,
+            EdgeCollector collector
+    ) {
+        edges.clear();
+
+        new SafeIterator<ClassSource>(s -> {
+            accept(s, new ClassInspector(true));
+            collector.merge(edges);
+        }).over(classSources);
+    }
+
+    /**
+     * Inspects the classes into the collector over the given parallelism, without completing it.
+     * Each worker visits its classes with an inspector of its own, and merges its buffer once per class.
+     */
+    public void inspectClasses(
+            Collection<ClassSource> classSources,
+            EdgeCollector collector,
+            int threads
+    ) {
+        if (threads <= 1) {
+            inspectClasses(classSources, collector);
+            return;
+        }
+
+        List<ClassSource> sources = new ArrayList<>(classSources);
+        ThreadLocal<StreamingReferenceInspector> inspectors = ThreadLocal.withInitial(() ->
+                new StreamingReferenceInspector(parsingOptions)
+        );
+        ParallelUtils.forEach(threads, sources.size(), index -> {
+            StreamingReferenceInspector inspector = inspectors.get();
+            inspector.accept(sources.get(index), inspector.new ClassInspector(true));
+            collector.merge(inspector.edges);
+        });
+    }
+
+    private void accept(ClassSource classSource, ClassInspector classInspector) {
+        try {
+            classSource.accept(classInspector, parsingOptions);
+        } catch (Exception e) {
+            //Ignore the failed classes if they are preserved
+            e.printStackTrace();
+        }
+    }
+
+    private class ClassInspector extends ClassVisitor {
+
+        private final boolean inspectMembers;
+        private String className;
+
+        ClassInspector(boolean inspectMembers) {
+            super(Opcodes.ASM9);
+            this.inspectMembers = inspectMembers;
+        }
+
+        @Override
+        public void visit(
+                int version,
+                int access,
+                String name,
+                String signature,
+                String superName,
+                String[] interfaces
+        ) {
+            className = name;
+            if (!inspectMembers) {
+                return;
+            }
+            if (interfaces != null) {
+                for (String interfaceName : interfaces) {
+                    classInspection(className, interfaceName, EdgeKind.IMPLEMENTS, edges);
+                }
+            }
+            if (superName != null) {
+                classInspection(className, superName, EdgeKind.EXTENDS, edges);
+            }
+        }
+
+        @Override
+        public void visitInnerClass(String name, String outerName, String innerName, int access) {
+            if (inspectMembers) {
+                classInspection(className, name, EdgeKind.INNER, edges);
+            }
+        }
+
+        @Override
+        public FieldVisitor visitField(
+                int access,
+                String name,
+                String descriptor,
+                String signature,
+                Object value
+        ) {
+            if (inspectMembers) {
+                fieldDeclarationInspection(className, name, descriptor, edges);
+            }
+            return null;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(
+                int access,
+                String name,
+                String descriptor,
+                String signature,
+                String[] exceptions
+        ) {
+            if (inspectMembers) {
+                methodSignatureInspection(className, name, descriptor, signature, edges);
+            }
+            return new InstructionInspector(
+                    className,
+                    methodComponent(className, name, descriptor)
+            );
+        }
+    }
+
+    private class InstructionInspector extends MethodVisitor {
+
+        private final String className;
+        private final int source;
+
+        InstructionInspector(String className, int source) {
+            super(Opcodes.ASM9);
+            this.className = className;
+            this.source = source;
+        }
+
+        private void add(int destination, int kind) {
+            if (destination != NO_COMPONENT) {
+                edges.add(source, destination, kind);
+            }
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            // NEW, ANEWARRAY, CHECKCAST and INSTANCEOF
+            add(typeComponent(className, type), instructionKind(opcode));
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+            add(typeComponent(className, descriptor), EdgeKind.NEW);
+        }
+
+        @Override
+        public void visitLdcInsn(Object value) {
+            add(constantComponent(className, value), EdgeKind.LDC_CLASS);
+        }
+
+        @Override
+        public void visitMethodInsn(
+                int opcode,
+                String owner,
+                String name,
+                String descriptor,
+                boolean isInterface
+        ) {
+            add(methodComponent(owner, name, descriptor), EdgeKind.INVOKE);
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+            add(fieldComponent(owner, name, descriptor), EdgeKind.FIELD_ACCESS);
+        }
+    }
+}
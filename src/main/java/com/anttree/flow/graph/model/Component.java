@@ -1,25 +1,59 @@
 package com.anttree.flow.graph.model;
 
-public class Component {
-    private String owner;
-    private String name;
-    private int type;
+/**
+ * Immutable node of the reference graph, compared by owner, name and type.
+ * <p>
+ * Owner and name are held as {@link SymbolTable} IDs, they are turned back
+ * into strings only when asked for.
+ */
+public final class Component {
+    private final int owner;
+    private final int name;
+    private final int type;
+    private final int hash;
 
     public Component(
             String owner,
             String name,
             int type
+    ) {
+        this(
+                SymbolTable.global().intern(owner),
+                SymbolTable.global().intern(name),
+                type
+        );
+    }
+
+    /**
+     * @param owner ID of the owner class name in the global symbol table
+     * @param name ID of the name in the global symbol table
+     */
+    public Component(
+            int owner,
+            int name,
+            int type
     ) {
         this.owner = owner;
         this.name = name;
         this.type = type;
+        // IDs are dense small numbers, mix them so that (1, 31) and (2, 0) do not collide
+        int hash = (owner * 0x9E3779B9 + name) * 0x9E3779B9 + type;
+        this.hash = hash ^ (hash >>> 16);
     }
 
     public String getOwner() {
-        return owner;
+        return SymbolTable.global().get(owner);
     }
 
     public String getName() {
+        return SymbolTable.global().get(name);
+    }
+
+    public int getOwnerId() {
+        return owner;
+    }
+
+    public int getNameId() {
         return name;
     }
 
@@ -32,15 +66,22 @@ public class Component {
         return getOwner() + "." + getName() + ":" + getType();
     }
 
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
     @Override
     public boolean equals(Object obj) {
-        if (obj == null) {
-            return false;
+        if (this == obj) {
+            return true;
         }
         if (!(obj instanceof Component)) {
-            return super.equals(obj);
-        } else {
-            return this.toString().equals(obj.toString());
+            return false;
         }
+        Component other = (Component) obj;
+        return owner == other.owner &&
+               name == other.name &&
+               type == other.type;
     }
 }
@@ -5,4 +5,8 @@ public class Constants {
     public static final String MODE_JAR = "j";
     public static final String MODE_CLASS_FULL = "class";
     public static final String MODE_JAR_FULL = "jar";
+
+    public static final String ENGINE_TREE = "tree";
+    public static final String ENGINE_STREAM = "stream";
+    public static final String ENGINE_VERIFY = "verify";
 }
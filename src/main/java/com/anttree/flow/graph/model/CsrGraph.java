@@ -0,0 +1,232 @@
+package com.anttree.flow.graph.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Immutable snapshot of the reference graph, in compressed sparse row layout.
+ * <p>
+ * Nodes are numbered 0..n-1, in the ascending order of their component ID.
+ * The successors of node n are targets[offsets[n] .. offsets[n + 1]), sorted,
+ * and the predecessors are kept the same way in a reverse CSR, so that every
+ * query is a linear scan over int arrays. The weights (reference counts)
+ * and kinds of the edges are kept aligned with the targets.
+ * Built by {@link EdgeStore#freeze()}, symbol IDs are the ones of the global {@link SymbolTable}.
+ */
+public final class CsrGraph implements GraphView {
+
+    private final SymbolTable symbols = SymbolTable.global();
+
+    private final int[] components;     // node : component ID
+
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] weights;
+    private final int[] kinds;
+
+    private final int[] reverseOffsets;
+    private final int[] sources;
+
+    CsrGraph(EdgeStore store) {
+        long[] edges = store.toArray();
+        Arrays.sort(edges);
+
+        int[] ids = new int[edges.length * 2];
+        for (int index = 0; index < edges.length; index++) {
+            ids[index * 2] = EdgeStore.source(edges[index]);
+            ids[index * 2 + 1] = EdgeStore.destination(edges[index]);
+        }
+        Arrays.sort(ids);
+        int distinct = 0;
+        for (int index = 0; index < ids.length; index++) {
+            if (distinct == 0 || ids[index] != ids[distinct - 1]) {
+                ids[distinct++] = ids[index];
+            }
+        }
+        this.components = Arrays.copyOf(ids, distinct);
+
+        int nodeCount = components.length;
+        this.offsets = new int[nodeCount + 1];
+        this.targets = new int[edges.length];
+        this.weights = new int[edges.length];
+        this.kinds = new int[edges.length];
+        this.reverseOffsets = new int[nodeCount + 1];
+        this.sources = new int[edges.length];
+
+        // Edges are sorted by source then destination, rows come out sorted
+        int[] edgeSources = new int[edges.length];
+        for (int index = 0; index < edges.length; index++) {
+            int source = indexOf(EdgeStore.source(edges[index]));
+            int destination = indexOf(EdgeStore.destination(edges[index]));
+            edgeSources[index] = source;
+            targets[index] = destination;
+            weights[index] = store.count(edges[index]);
+            kinds[index] = store.kinds(edges[index]);
+            offsets[source + 1]++;
+            reverseOffsets[destination + 1]++;
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            offsets[node + 1] += offsets[node];
+            reverseOffsets[node + 1] += reverseOffsets[node];
+        }
+
+        int[] next = Arrays.copyOf(reverseOffsets, nodeCount);
+        for (int index = 0; index < edges.length; index++) {
+            sources[next[targets[index]]++] = edgeSources[index];
+        }
+    }
+
+    @Override
+    public int nodeCount() {
+        return components.length;
+    }
+
+    @Override
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * Returns the component ID of the node.
+     */
+    public int getComponent(int node) {
+        return components[node];
+    }
+
+    /**
+     * Returns the node of the component, or -1 if the component has no edge.
+     */
+    public int indexOf(int component) {
+        int node = Arrays.binarySearch(components, component);
+        return node >= 0 ? node : -1;
+    }
+
+    @Override
+    public int getOwnerId(int node) {
+        return symbols.getComponentOwner(components[node]);
+    }
+
+    @Override
+    public int getNameId(int node) {
+        return symbols.getComponentName(components[node]);
+    }
+
+    @Override
+    public int getType(int node) {
+        return symbols.getComponentType(components[node]);
+    }
+
+    @Override
+    public String getSymbol(int symbolId) {
+        return symbols.get(symbolId);
+    }
+
+    @Override
+    public int outDegree(int node) {
+        return offsets[node + 1] - offsets[node];
+    }
+
+    @Override
+    public int inDegree(int node) {
+        return reverseOffsets[node + 1] - reverseOffsets[node];
+    }
+
+    @Override
+    public boolean hasEdge(int source, int destination) {
+        return Arrays.binarySearch(targets, offsets[source], offsets[source + 1], destination) >= 0;
+    }
+
+    @Override
+    public int getWeight(int source, int destination) {
+        int index = Arrays.binarySearch(targets, offsets[source], offsets[source + 1], destination);
+        return index >= 0 ? weights[index] : 0;
+    }
+
+    @Override
+    public int getKinds(int source, int destination) {
+        int index = Arrays.binarySearch(targets, offsets[source], offsets[source + 1], destination);
+        return index >= 0 ? kinds[index] : EdgeKind.NONE;
+    }
+
+    public int[] successors(int node) {
+        return Arrays.copyOfRange(targets, offsets[node], offsets[node + 1]);
+    }
+
+    public int[] predecessors(int node) {
+        return Arrays.copyOfRange(sources, reverseOffsets[node], reverseOffsets[node + 1]);
+    }
+
+    @Override
+    public void forEachSuccessor(int node, NodeConsumer action) {
+        for (int index = offsets[node]; index < offsets[node + 1]; index++) {
+            action.accept(targets[index]);
+        }
+    }
+
+    @Override
+    public void forEachPredecessor(int node, NodeConsumer action) {
+        for (int index = reverseOffsets[node]; index < reverseOffsets[node + 1]; index++) {
+            action.accept(sources[index]);
+        }
+    }
+
+    @Override
+    public void forEachEdge(EdgeConsumer action) {
+        for (int node = 0; node < components.length; node++) {
+            for (int index = offsets[node]; index < offsets[node + 1]; index++) {
+                action.accept(node, targets[index]);
+            }
+        }
+    }
+
+    @Override
+    public void forEachWeightedEdge(WeightedEdgeConsumer action) {
+        for (int node = 0; node < components.length; node++) {
+            for (int index = offsets[node]; index < offsets[node + 1]; index++) {
+                action.accept(node, targets[index], weights[index], kinds[index]);
+            }
+        }
+    }
+
+    @Override
+    public void forEachWeightedEdge(int kinds, WeightedEdgeConsumer action) {
+        for (int node = 0; node < components.length; node++) {
+            for (int index = offsets[node]; index < offsets[node + 1]; index++) {
+                if (EdgeKind.accepts(kinds, this.kinds[index])) {
+                    action.accept(node, targets[index], weights[index], this.kinds[index]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public BitSet reachableFrom(int node) {
+        return traverse(node, offsets, targets);
+    }
+
+    @Override
+    public BitSet reaching(int node) {
+        return traverse(node, reverseOffsets, sources);
+    }
+
+    private BitSet traverse(int start, int[] rowOffsets, int[] columns) {
+        BitSet visited = new BitSet(components.length);
+        int[] queue = new int[components.length];
+        int head = 0;
+        int tail = 0;
+
+        visited.set(start);
+        queue[tail++] = start;
+        while (head < tail) {
+            int node = queue[head++];
+            for (int index = rowOffsets[node]; index < rowOffsets[node + 1]; index++) {
+                int next = columns[index];
+                if (!visited.get(next)) {
+                    visited.set(next);
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return visited;
+    }
+}
@@ -0,0 +1,176 @@
+package com.anttree.flow.graph.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shared destination of the edges found by the inspection workers.
+ * <p>
+ * Each worker records the edges of a class in its own {@link EdgeStore}, where
+ * the repeated references of the class are merged without any synchronization,
+ * and hands the buffer over with {@link #merge(EdgeStore)} once the class is done.
+ * The global store is then locked once per class instead of once per reference.
+ * <p>
+ * The merges are counted, so that the contention on the global store can be reported.
+ * <p>
+ * When a memory limit is given, the global store is swapped for a new one every time
+ * its footprint goes over the limit, and spilled to a sorted run on disk out of the lock.
+ * The runs are merged back by {@link #getEdges()}, or straight into a graph file by {@link #writeGraph(Path)}.
+ */
+public final class EdgeCollector {
+
+    private EdgeStore edges;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Footprint of the global store over which it is spilled, 0 to keep it in memory
+    private final long memoryLimit;
+    private final EdgeRuns runs = new EdgeRuns();
+
+    // Guarded by the lock
+    private long batches;
+    private long mergedEdges;
+    private long newEdges;
+
+    private final LongAdder occurrences = new LongAdder();
+    private final LongAdder contendedMerges = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    public EdgeCollector() {
+        this(new EdgeStore());
+    }
+
+    public EdgeCollector(EdgeStore edges) {
+        this(edges, 0);
+    }
+
+    public EdgeCollector(long memoryLimit) {
+        this(new EdgeStore(), memoryLimit);
+    }
+
+    public EdgeCollector(EdgeStore edges, long memoryLimit) {
+        this.edges = edges;
+        this.memoryLimit = Math.max(0, memoryLimit);
+    }
+
+    /**
+     * Adds the edges of the buffer to the global store, with their counts and kinds,
+     * then clears the buffer so that the worker can reuse it.
+     */
+    public void merge(EdgeStore buffer) {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        long bufferOccurrences = buffer.occurrences();
+        EdgeStore full = null;
+
+        if (!lock.tryLock()) {
+            long start = System.nanoTime();
+            lock.lock();
+            contendedMerges.increment();
+            waitNanos.add(System.nanoTime() - start);
+        }
+        try {
+            newEdges += edges.addAll(buffer);
+            mergedEdges += buffer.size();
+            batches++;
+            if (memoryLimit > 0 && edges.footprint() > memoryLimit) {
+                // A new store, the cleared one would keep its grown arrays
+                full = edges;
+                edges = new EdgeStore();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (full != null) {
+            // Sorted and written while the other workers merge into the new store
+            try {
+                runs.spill(full);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        occurrences.add(bufferOccurrences);
+        buffer.clear();
+    }
+
+    /**
+     * Returns the global store, to be called once every worker is done.
+     * The spilled runs, if any, are merged back into it first.
+     */
+    public EdgeStore getEdges() {
+        lock.lock();
+        try {
+            if (runs.size() > 0) {
+                // The last edges join the runs, so that the merge holds no other store
+                if (!edges.isEmpty()) {
+                    runs.spill(edges);
+                }
+                edges = null;
+                edges = runs.merge();
+            }
+            return edges;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the graph of the edges to the file, to be called once every worker is done.
+     * The spilled runs, if any, are merged straight into the file, so that the edges
+     * are never held on heap all together. The collector is left empty.
+     */
+    public void writeGraph(Path file) throws IOException {
+        lock.lock();
+        try {
+            if (runs.size() == 0) {
+                MappedGraph.write(edges.sorted(), file);
+                return;
+            }
+            if (!edges.isEmpty()) {
+                runs.spill(edges);
+            }
+            edges = new EdgeStore();
+            try {
+                MappedGraph.write(runs, file);
+            } finally {
+                runs.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the merge statistics : references found, references merged locally
+     * by the buffers, global inserts actually done, how often a merge had to wait, and the spills.
+     */
+    public String getStatistics() {
+        lock.lock();
+        try {
+            long found = occurrences.sum();
+            return String.format(
+                    "%d references in %d batches, %d merged in the local buffers (%.1f%%), "
+                    + "%d global inserts (%d new edges), %d contended merges, %.2f ms waiting, "
+                    + "%d edges spilled",
+                    found,
+                    batches,
+                    found - mergedEdges,
+                    found == 0 ? 0.0 : 100.0 * (found - mergedEdges) / found,
+                    mergedEdges,
+                    newEdges,
+                    contendedMerges.sum(),
+                    waitNanos.sum() / 1_000_000.0,
+                    runs.getSpilledEdges()
+            );
+        } finally {
+            lock.unlock();
+        }
+    }
+}
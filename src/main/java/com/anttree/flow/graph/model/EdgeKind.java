@@ -0,0 +1,79 @@
+package com.anttree.flow.graph.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Kinds of reference an edge stands for, as bits of a mask.
+ * An edge found several ways (a class both extended and instantiated) has several bits set.
+ */
+public class EdgeKind {
+
+    public static final int NONE            = 0;
+    public static final int EXTENDS         = 1;
+    public static final int IMPLEMENTS      = 1 << 1;
+    public static final int INNER           = 1 << 2;
+    public static final int NEW             = 1 << 3;   // NEW, ANEWARRAY, MULTIANEWARRAY
+    public static final int TYPE_CHECK      = 1 << 4;   // CHECKCAST, INSTANCEOF
+    public static final int INVOKE          = 1 << 5;
+    public static final int FIELD_ACCESS    = 1 << 6;   // GETFIELD, PUTFIELD, GETSTATIC, PUTSTATIC
+    public static final int LDC_CLASS       = 1 << 7;
+    public static final int SIGNATURE       = 1 << 8;   // types of the method signatures and field declarations
+    public static final int ALL             = (1 << 9) - 1;
+
+    private static final String[] NAMES = {
+            "extends",
+            "implements",
+            "inner",
+            "new",
+            "checkcast",
+            "invoke",
+            "field",
+            "ldc",
+            "signature"
+    };
+
+    /**
+     * Parses comma separated kind names (ex. "invoke,field"), "all" accepts every kind.
+     * At least one kind must be given, an empty mask would draw nothing.
+     */
+    public static int parse(String kinds) {
+        int mask = NONE;
+        for (String kind : kinds.split(",")) {
+            String name = kind.trim().toLowerCase();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (name.equals("all")) {
+                return ALL;
+            }
+            int bit = List.of(NAMES).indexOf(name);
+            if (bit < 0) {
+                throw new IllegalArgumentException("Unknown edge kind " + kind
+                        + ", expected one of " + String.join(", ", NAMES));
+            }
+            mask |= 1 << bit;
+        }
+        if (mask == NONE) {
+            throw new IllegalArgumentException("Missing edge kind, expected one of " + String.join(", ", NAMES));
+        }
+        return mask;
+    }
+
+    /**
+     * Tells whether an edge of the given kinds is accepted by the mask.
+     */
+    public static boolean accepts(int mask, int kinds) {
+        return mask == ALL || (kinds & mask) != 0;
+    }
+
+    public static String toString(int kinds) {
+        List<String> names = new ArrayList<>();
+        for (int bit = 0; bit < NAMES.length; bit++) {
+            if ((kinds & (1 << bit)) != 0) {
+                names.add(NAMES[bit]);
+            }
+        }
+        return String.join(",", names);
+    }
+}
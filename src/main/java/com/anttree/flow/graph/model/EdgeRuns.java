@@ -0,0 +1,174 @@
+package com.anttree.flow.graph.model;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorted runs of edges spilled to temporary files, when the edges do not fit in the heap budget.
+ * <p>
+ * Each run holds the edges of a store in ascending order, with their count and kinds.
+ * The runs are merged back in a single pass, the same edge found in several runs
+ * having its counts summed and its kinds OR'ed, exactly as if it had never left the heap.
+ * The merge comes out in ascending order, so it is written to a graph file as it goes.
+ * <p>
+ * Several workers may spill at once, the runs are sorted and written concurrently.
+ * <pre>
+ * run        int edge count, then (long edge, int count, int kinds) per edge
+ * </pre>
+ */
+public final class EdgeRuns implements SortedEdges, Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final List<Path> runs = new ArrayList<>();
+    private long spilledEdges;
+
+    /**
+     * Writes the edges of the store to a new run.
+     */
+    public void spill(EdgeStore edges) throws IOException {
+        long[] sorted = edges.toArray();
+        Arrays.sort(sorted);
+
+        Path run = Files.createTempFile("cfg-edges-", ".run");
+        run.toFile().deleteOnExit();
+        synchronized (this) {
+            runs.add(run);
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(run), BUFFER_SIZE
+        ))) {
+            output.writeInt(sorted.length);
+            for (long edge : sorted) {
+                output.writeLong(edge);
+                output.writeInt(edges.count(edge));
+                output.writeInt(edges.kinds(edge));
+            }
+        }
+        synchronized (this) {
+            spilledEdges += sorted.length;
+        }
+    }
+
+    public synchronized int size() {
+        return runs.size();
+    }
+
+    public synchronized long getSpilledEdges() {
+        return spilledEdges;
+    }
+
+    /**
+     * Merges every run into a new store, the runs are deleted once merged.
+     * The runs are read twice, first to size the store for the distinct edges,
+     * then to fill it, so that nothing but the merged store is held in memory.
+     */
+    public EdgeStore merge() throws IOException {
+        try {
+            int[] distinct = new int[1];
+            forEach((edge, count, kinds) -> distinct[0]++);
+
+            EdgeStore merged = new EdgeStore(distinct[0]);
+            forEach(merged::add);
+            return merged;
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Visits the edges of every run in ascending order, each edge once with its total count and kinds.
+     * To be called once every spill is done.
+     */
+    @Override
+    public void forEach(EdgeStore.EdgeConsumer action) throws IOException {
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>(
+                Comparator.comparingLong(cursor -> cursor.edge)
+        );
+        try {
+            for (Path run : runs()) {
+                Cursor cursor = new Cursor(run);
+                if (cursor.next()) {
+                    cursors.add(cursor);
+                } else {
+                    cursor.close();
+                }
+            }
+
+            while (!cursors.isEmpty()) {
+                long edge = cursors.peek().edge;
+                long count = 0;
+                int kinds = EdgeKind.NONE;
+                while (!cursors.isEmpty() && cursors.peek().edge == edge) {
+                    Cursor cursor = cursors.poll();
+                    count += cursor.count;
+                    kinds |= cursor.kinds;
+                    if (cursor.next()) {
+                        cursors.add(cursor);
+                    } else {
+                        cursor.close();
+                    }
+                }
+                action.accept(edge, (int) Math.min(count, Integer.MAX_VALUE), kinds);
+            }
+        } finally {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+    }
+
+    private synchronized List<Path> runs() {
+        return new ArrayList<>(runs);
+    }
+
+    /**
+     * Deletes the runs.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+    }
+
+    private static final class Cursor implements Closeable {
+        private final DataInputStream input;
+        private int remaining;
+
+        long edge;
+        int count;
+        int kinds;
+
+        Cursor(Path run) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(run), BUFFER_SIZE
+            ));
+            this.remaining = input.readInt();
+        }
+
+        boolean next() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            edge = input.readLong();
+            count = input.readInt();
+            kinds = input.readInt();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package com.anttree.flow.graph.model;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+
+/**
+ * Set of the edges of the reference graph, without any boxing.
+ * <p>
+ * An edge is packed in a long as (source << 32 | destination), source and
+ * destination being component IDs of the {@link SymbolTable}. The edges are
+ * kept in a single long array, open addressing with linear probing, so an
+ * edge costs 8 to 16 bytes instead of two Components, a Reference and a hash
+ * map node. {@link #references()} views them as References for compatibility.
+ * <p>
+ * Every edge also counts how many times it has been added, in a parallel int
+ * array, so repeated references (a method called 500 times from the same
+ * method) weigh more than a single one. The {@link EdgeKind} bits it has
+ * been added with are OR'ed in a third array, the count being the total of every kind.
+ * <p>
+ * Not thread safe, workers share their edges through an {@link EdgeCollector}.
+ */
+public final class EdgeStore {
+
+    public interface EdgeConsumer {
+        void accept(long edge, int count, int kinds);
+    }
+
+    // Component IDs are positive, no edge packs to -1
+    private static final long EMPTY = -1L;
+    private static final int MIN_CAPACITY = 16;
+    // Largest power of two an array can hold, the table is kept at most half full
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final int MAX_SIZE = MAX_CAPACITY >>> 1;
+
+    private long[] table;
+    private int[] counts;
+    private int[] kinds;
+    private int size;
+
+    public EdgeStore() {
+        this(MIN_CAPACITY);
+    }
+
+    public EdgeStore(int expectedSize) {
+        this.table = newTable(capacityFor(expectedSize));
+        this.counts = new int[table.length];
+        this.kinds = new int[table.length];
+    }
+
+    public static long edge(int source, int destination) {
+        return ((long) source << 32) | (destination & 0xFFFFFFFFL);
+    }
+
+    public static int source(long edge) {
+        return (int) (edge >>> 32);
+    }
+
+    public static int destination(long edge) {
+        return (int) edge;
+    }
+
+    public boolean add(int source, int destination) {
+        return add(edge(source, destination));
+    }
+
+    public boolean add(int source, int destination, int kinds) {
+        return add(edge(source, destination), 1, kinds);
+    }
+
+    /**
+     * Adds an occurrence of the edge.
+     *
+     * @return false if the edge was already stored
+     */
+    public boolean add(long edge) {
+        return add(edge, 1, EdgeKind.NONE);
+    }
+
+    /**
+     * Adds occurrences of the edge, counts saturate at Integer.MAX_VALUE.
+     *
+     * @param kinds {@link EdgeKind} bits, merged with the ones of the edge
+     * @return false if the edge was already stored
+     */
+    public boolean add(long edge, int count, int kinds) {
+        if (edge < 0) {
+            throw new IllegalArgumentException("Invalid edge " + Long.toHexString(edge));
+        }
+        if (count <= 0) {
+            throw new IllegalArgumentException("Invalid count " + count);
+        }
+        int mask = table.length - 1;
+        int slot = mix(edge) & mask;
+        long current;
+        while ((current = table[slot]) != EMPTY) {
+            if (current == edge) {
+                int total = counts[slot] + count;
+                counts[slot] = total < 0 ? Integer.MAX_VALUE : total;
+                this.kinds[slot] |= kinds;
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size == MAX_SIZE) {
+            throw new IllegalStateException("Too many edges, a store holds " + MAX_SIZE + " at most");
+        }
+        table[slot] = edge;
+        counts[slot] = count;
+        this.kinds[slot] = kinds;
+        if (++size > table.length >>> 1 && table.length < MAX_CAPACITY) {
+            rehash(table.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * Adds every edge of the other store, with its count and kinds.
+     *
+     * @return the number of edges which were not stored yet
+     */
+    public int addAll(EdgeStore edges) {
+        int added = 0;
+        for (int slot = 0; slot < edges.table.length; slot++) {
+            long edge = edges.table[slot];
+            if (edge != EMPTY && add(edge, edges.counts[slot], edges.kinds[slot])) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    public boolean contains(int source, int destination) {
+        return contains(edge(source, destination));
+    }
+
+    public boolean contains(long edge) {
+        return slotOf(edge) >= 0;
+    }
+
+    /**
+     * Returns how many times the edge has been added, 0 if it is not stored.
+     */
+    public int count(long edge) {
+        int slot = slotOf(edge);
+        return slot >= 0 ? counts[slot] : 0;
+    }
+
+    /**
+     * Returns how many times the edges have been added in total.
+     */
+    public long occurrences() {
+        long occurrences = 0;
+        for (int slot = 0; slot < table.length; slot++) {
+            if (table[slot] != EMPTY) {
+                occurrences += counts[slot];
+            }
+        }
+        return occurrences;
+    }
+
+    /**
+     * Returns the {@link EdgeKind} bits of the edge, 0 if it is not stored.
+     */
+    public int kinds(long edge) {
+        int slot = slotOf(edge);
+        return slot >= 0 ? kinds[slot] : EdgeKind.NONE;
+    }
+
+    /**
+     * Tells whether both stores hold the same edges, with the same counts and kinds.
+     */
+    public boolean sameEdges(EdgeStore edges) {
+        if (size != edges.size) {
+            return false;
+        }
+        for (int slot = 0; slot < table.length; slot++) {
+            if (table[slot] == EMPTY) {
+                continue;
+            }
+            int other = edges.slotOf(table[slot]);
+            if (other < 0 || edges.counts[other] != counts[slot] || edges.kinds[other] != kinds[slot]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the bytes held by the arrays of the store.
+     */
+    public long footprint() {
+        return (long) table.length * (Long.BYTES + 2 * Integer.BYTES);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(table, EMPTY);
+            Arrays.fill(counts, 0);
+            Arrays.fill(kinds, EdgeKind.NONE);
+            size = 0;
+        }
+    }
+
+    public void forEach(LongConsumer action) {
+        for (long edge : table) {
+            if (edge != EMPTY) {
+                action.accept(edge);
+            }
+        }
+    }
+
+    public void forEach(EdgeConsumer action) {
+        for (int slot = 0; slot < table.length; slot++) {
+            if (table[slot] != EMPTY) {
+                action.accept(table[slot], counts[slot], kinds[slot]);
+            }
+        }
+    }
+
+    public LongStream stream() {
+        return Arrays.stream(table).filter(edge -> edge != EMPTY);
+    }
+
+    public long[] toArray() {
+        return stream().toArray();
+    }
+
+    /**
+     * Returns the edges in ascending order, only a sorted copy of the edges is made.
+     */
+    public SortedEdges sorted() {
+        long[] sorted = toArray();
+        Arrays.sort(sorted);
+        return action -> {
+            for (long edge : sorted) {
+                action.accept(edge, count(edge), kinds(edge));
+            }
+        };
+    }
+
+    /**
+     * Returns an immutable CSR snapshot of the edges, for the queries run once the inspection is done.
+     */
+    public CsrGraph freeze() {
+        return new CsrGraph(this);
+    }
+
+    /**
+     * Returns a read-only view of the edges as References,
+     * the References are only built while iterating.
+     */
+    public Set<Reference> references() {
+        SymbolTable symbols = SymbolTable.global();
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Reference> iterator() {
+                return new Iterator<>() {
+                    private int slot = advance(0);
+
+                    private int advance(int from) {
+                        while (from < table.length && table[from] == EMPTY) {
+                            from++;
+                        }
+                        return from;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return slot < table.length;
+                    }
+
+                    @Override
+                    public Reference next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        long edge = table[slot];
+                        slot = advance(slot + 1);
+                        return new Reference(
+                                symbols.getComponent(source(edge)),
+                                symbols.getComponent(destination(edge))
+                        );
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (!(o instanceof Reference)) {
+                    return false;
+                }
+                Reference reference = (Reference) o;
+                int source = symbols.findComponent(reference.getSrc());
+                int destination = symbols.findComponent(reference.getDest());
+                return source >= 0 && destination >= 0 &&
+                       EdgeStore.this.contains(source, destination);
+            }
+        };
+    }
+
+    private int slotOf(long edge) {
+        if (edge < 0) {
+            return -1;
+        }
+        int mask = table.length - 1;
+        int slot = mix(edge) & mask;
+        long current;
+        while ((current = table[slot]) != EMPTY) {
+            if (current == edge) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash(int capacity) {
+        long[] previous = table;
+        int[] previousCounts = counts;
+        int[] previousKinds = kinds;
+        table = newTable(capacity);
+        counts = new int[capacity];
+        kinds = new int[capacity];
+        int mask = capacity - 1;
+        for (int index = 0; index < previous.length; index++) {
+            long edge = previous[index];
+            if (edge == EMPTY) {
+                continue;
+            }
+            int slot = mix(edge) & mask;
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = edge;
+            counts[slot] = previousCounts[index];
+            kinds[slot] = previousKinds[index];
+        }
+    }
+
+    private static int mix(long edge) {
+        long hash = edge * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static int capacityFor(int expectedSize) {
+        if (expectedSize > MAX_SIZE) {
+            throw new IllegalArgumentException("Too many edges " + expectedSize
+                    + ", a store holds " + MAX_SIZE + " at most");
+        }
+        int capacity = MIN_CAPACITY;
+        while (capacity >>> 1 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static long[] newTable(int capacity) {
+        long[] table = new long[capacity];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+}
@@ -0,0 +1,118 @@
+package com.anttree.flow.graph.model;
+
+import java.util.BitSet;
+
+/**
+ * Read-only reference graph, its nodes numbered 0..n-1.
+ * <p>
+ * Implemented on heap by {@link CsrGraph}, and off heap by {@link MappedGraph}.
+ * Owner and name of the nodes are symbol IDs of the view, resolved with {@link #getSymbol(int)}.
+ */
+public interface GraphView {
+
+    interface EdgeConsumer {
+        void accept(int source, int destination);
+    }
+
+    interface WeightedEdgeConsumer {
+        /**
+         * @param kinds {@link EdgeKind} bits of the edge
+         */
+        void accept(int source, int destination, int weight, int kinds);
+    }
+
+    interface NodeConsumer {
+        void accept(int node);
+    }
+
+    int nodeCount();
+
+    int edgeCount();
+
+    int getOwnerId(int node);
+
+    int getNameId(int node);
+
+    /**
+     * @return one of {@link ComponentType}
+     */
+    int getType(int node);
+
+    String getSymbol(int symbolId);
+
+    int outDegree(int node);
+
+    int inDegree(int node);
+
+    boolean hasEdge(int source, int destination);
+
+    /**
+     * Returns how many times the source refers to the destination, 0 if there is no edge.
+     */
+    int getWeight(int source, int destination);
+
+    /**
+     * Returns the {@link EdgeKind} bits of the edge, 0 if there is no edge.
+     */
+    int getKinds(int source, int destination);
+
+    void forEachSuccessor(int node, NodeConsumer action);
+
+    void forEachPredecessor(int node, NodeConsumer action);
+
+    /**
+     * Visits every edge, sorted by source then destination.
+     */
+    void forEachEdge(EdgeConsumer action);
+
+    /**
+     * Visits every edge with its weight and kinds, sorted by source then destination.
+     */
+    void forEachWeightedEdge(WeightedEdgeConsumer action);
+
+    /**
+     * Visits the edges having any of the kinds, with their weight and kinds.
+     *
+     * @param kinds mask of {@link EdgeKind} bits, {@link EdgeKind#ALL} visits every edge
+     */
+    void forEachWeightedEdge(int kinds, WeightedEdgeConsumer action);
+
+    /**
+     * Returns the nodes reachable from the node, the node included.
+     */
+    default BitSet reachableFrom(int node) {
+        return traverse(node, true);
+    }
+
+    /**
+     * Returns the nodes the node is reachable from, the node included.
+     */
+    default BitSet reaching(int node) {
+        return traverse(node, false);
+    }
+
+    private BitSet traverse(int start, boolean forward) {
+        BitSet visited = new BitSet(nodeCount());
+        int[] queue = new int[nodeCount()];
+        int[] tail = {0};
+        int head = 0;
+
+        visited.set(start);
+        queue[tail[0]++] = start;
+        NodeConsumer visit = next -> {
+            if (!visited.get(next)) {
+                visited.set(next);
+                queue[tail[0]++] = next;
+            }
+        };
+        while (head < tail[0]) {
+            int node = queue[head++];
+            if (forward) {
+                forEachSuccessor(node, visit);
+            } else {
+                forEachPredecessor(node, visit);
+            }
+        }
+        return visited;
+    }
+}
@@ -0,0 +1,540 @@
+package com.anttree.flow.graph.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Reference graph stored in a memory-mapped file, off heap.
+ * <p>
+ * The file holds a string table, a node table and the CSR edge arrays
+ * (forward and reverse), so opening it only maps the file, and queries read
+ * the mapping in place: the heap used does not grow with the graph.
+ * Symbol IDs are local to the file.
+ * <pre>
+ * header     magic, version, symbol count, node count, edge count, symbol data size
+ * symbols    int[symbol count + 1] offsets, then the UTF-8 bytes padded to 4 bytes
+ * nodes      int[node count * 3] owner symbol, name symbol, type
+ * forward    int[node count + 1] offsets, int[edge count] targets, weights, kinds
+ * reverse    int[node count + 1] offsets, int[edge count] sources
+ * </pre>
+ */
+public final class MappedGraph implements GraphView {
+
+    private static final int MAGIC          = 0x43464753;   // CFGS
+    private static final int VERSION        = 3;
+    private static final int HEADER_SIZE    = 6 * Integer.BYTES;
+    private static final int BUFFER_SIZE    = 1 << 16;
+
+    private final ByteBuffer symbolData;
+    private final IntBuffer symbolOffsets;
+    private final IntBuffer nodes;
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+    private final IntBuffer weights;
+    private final IntBuffer kinds;
+    private final IntBuffer reverseOffsets;
+    private final IntBuffer sources;
+
+    private final int nodeCount;
+    private final int edgeCount;
+
+    private MappedGraph(ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a graph file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported graph file version " + buffer.getInt(4));
+        }
+        int symbolCount = buffer.getInt(8);
+        this.nodeCount = buffer.getInt(12);
+        this.edgeCount = buffer.getInt(16);
+        int symbolDataSize = buffer.getInt(20);
+
+        int position = HEADER_SIZE;
+        this.symbolOffsets = ints(buffer, position, symbolCount + 1);
+        position += (symbolCount + 1) * Integer.BYTES;
+        if (symbolDataSize < 0 || position + (long) padded(symbolDataSize) > buffer.limit()) {
+            throw new IOException("Truncated graph file");
+        }
+        this.symbolData = buffer.slice(position, symbolDataSize);
+        position += padded(symbolDataSize);
+        this.nodes = ints(buffer, position, nodeCount * 3);
+        position += nodeCount * 3 * Integer.BYTES;
+        this.offsets = ints(buffer, position, nodeCount + 1);
+        position += (nodeCount + 1) * Integer.BYTES;
+        this.targets = ints(buffer, position, edgeCount);
+        position += edgeCount * Integer.BYTES;
+        this.weights = ints(buffer, position, edgeCount);
+        position += edgeCount * Integer.BYTES;
+        this.kinds = ints(buffer, position, edgeCount);
+        position += edgeCount * Integer.BYTES;
+        this.reverseOffsets = ints(buffer, position, nodeCount + 1);
+        position += (nodeCount + 1) * Integer.BYTES;
+        this.sources = ints(buffer, position, edgeCount);
+    }
+
+    public static MappedGraph open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to be mapped ("
+                        + channel.size() + " bytes)");
+            }
+            // The mapping stays valid after the channel has been closed
+            return new MappedGraph(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Tells whether the file is a graph written by {@link #write(GraphView, Path)}.
+     */
+    public static boolean isGraphFile(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+            return channel.read(magic, 0) == Integer.BYTES && magic.getInt(0) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the graph to the file, only the symbols of its nodes are kept.
+     */
+    public static void write(GraphView graph, Path file) throws IOException {
+        writeAtomically(file, output -> {
+            writeNodes(
+                    output,
+                    graph.nodeCount(),
+                    graph.edgeCount(),
+                    graph::getOwnerId,
+                    graph::getNameId,
+                    graph::getType,
+                    graph::getSymbol
+            );
+            writeRows(output, graph, true);
+            writeWeights(output, graph, false);
+            writeWeights(output, graph, true);
+            writeRows(output, graph, false);
+        });
+    }
+
+    /**
+     * Writes the edges to the file, as the graph {@link EdgeStore#freeze()} would give,
+     * their components being the ones of the global {@link SymbolTable}.
+     * <p>
+     * The edges are visited three times and never held in memory : for the nodes, for
+     * the degrees, then for the rows. The targets are written as they come, the weights,
+     * kinds and the scattered reverse rows go through a scratch file mapped off heap.
+     * Only the node arrays are kept on heap.
+     */
+    public static void write(SortedEdges edges, Path file) throws IOException {
+        SymbolTable symbols = SymbolTable.global();
+
+        ComponentSet nodeSet = new ComponentSet();
+        long[] edgeTotal = new long[1];
+        edges.forEach((edge, count, kinds) -> {
+            nodeSet.add(EdgeStore.source(edge));
+            nodeSet.add(EdgeStore.destination(edge));
+            edgeTotal[0]++;
+        });
+        int[] components = nodeSet.toArray();
+        int nodeCount = components.length;
+        // The forward and reverse rows alone, the file cannot be mapped past 2 GB
+        if (4L * Integer.BYTES * edgeTotal[0] + 5L * Integer.BYTES * nodeCount > Integer.MAX_VALUE) {
+            throw new IOException("Too many edges to be mapped (" + edgeTotal[0] + " edges)");
+        }
+        int edgeCount = (int) edgeTotal[0];
+
+        int[] offsets = new int[nodeCount + 1];
+        int[] reverseOffsets = new int[nodeCount + 1];
+        edges.forEach((edge, count, kinds) -> {
+            offsets[Arrays.binarySearch(components, EdgeStore.source(edge)) + 1]++;
+            reverseOffsets[Arrays.binarySearch(components, EdgeStore.destination(edge)) + 1]++;
+        });
+        for (int node = 0; node < nodeCount; node++) {
+            offsets[node + 1] += offsets[node];
+            reverseOffsets[node + 1] += reverseOffsets[node];
+        }
+
+        // weights, kinds, then sources
+        Path scratch = Files.createTempFile("cfg-graph-", ".rows");
+        scratch.toFile().deleteOnExit();
+        try {
+            ByteBuffer rows;
+            try (FileChannel channel = FileChannel.open(
+                    scratch, StandardOpenOption.READ, StandardOpenOption.WRITE
+            )) {
+                rows = channel.map(FileChannel.MapMode.READ_WRITE, 0, 3L * edgeCount * Integer.BYTES);
+            }
+
+            writeAtomically(file, output -> {
+                writeNodes(
+                        output,
+                        nodeCount,
+                        edgeCount,
+                        node -> symbols.getComponentOwner(components[node]),
+                        node -> symbols.getComponentName(components[node]),
+                        node -> symbols.getComponentType(components[node]),
+                        symbols::get
+                );
+                writeOffsets(output, offsets);
+
+                IOException[] failure = new IOException[1];
+                int[] index = new int[1];
+                int[] next = Arrays.copyOf(reverseOffsets, nodeCount);
+                edges.forEach((edge, count, kinds) -> {
+                    int source = Arrays.binarySearch(components, EdgeStore.source(edge));
+                    int destination = Arrays.binarySearch(components, EdgeStore.destination(edge));
+                    try {
+                        output.writeInt(destination);
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                    rows.putInt(index[0] * Integer.BYTES, count);
+                    rows.putInt((edgeCount + index[0]) * Integer.BYTES, kinds);
+                    rows.putInt((2 * edgeCount + next[destination]++) * Integer.BYTES, source);
+                    index[0]++;
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+
+                copyInts(rows, 0, edgeCount, output);
+                copyInts(rows, edgeCount, edgeCount, output);
+                writeOffsets(output, reverseOffsets);
+                copyInts(rows, 2 * edgeCount, edgeCount, output);
+            });
+        } finally {
+            // A mapped file cannot be deleted on every platform, it is deleted on exit then
+            scratch.toFile().delete();
+        }
+    }
+
+    /**
+     * Writes the graph to a temporary file renamed once complete, so that an interrupted
+     * write never leaves a truncated graph behind, nor replaces the previous one.
+     */
+    private static void writeAtomically(Path file, GraphWriter writer) throws IOException {
+        Path target = file.toAbsolutePath();
+        // Created as the graph file would be, unlike a temporary file only readable by its owner
+        Path temporary = target.resolveSibling(target.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary), BUFFER_SIZE
+            ))) {
+                writer.write(output);
+            }
+            try {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Writes the header, the symbols of the nodes renumbered densely, and the node table.
+     */
+    private static void writeNodes(
+            DataOutputStream output,
+            int nodeCount,
+            int edgeCount,
+            IntUnaryOperator ownerOf,
+            IntUnaryOperator nameOf,
+            IntUnaryOperator typeOf,
+            IntFunction<String> symbolOf
+    ) throws IOException {
+        int[] symbols = new int[nodeCount * 2];
+        for (int node = 0; node < nodeCount; node++) {
+            symbols[node * 2] = ownerOf.applyAsInt(node);
+            symbols[node * 2 + 1] = nameOf.applyAsInt(node);
+        }
+        symbols = Arrays.copyOf(symbols, sortDistinct(symbols, symbols.length));
+        int symbolCount = symbols.length;
+
+        byte[][] symbolBytes = new byte[symbolCount][];
+        int symbolDataSize = 0;
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            symbolBytes[symbol] = symbolOf.apply(symbols[symbol]).getBytes(StandardCharsets.UTF_8);
+            symbolDataSize += symbolBytes[symbol].length;
+        }
+
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(symbolCount);
+        output.writeInt(nodeCount);
+        output.writeInt(edgeCount);
+        output.writeInt(symbolDataSize);
+
+        int symbolOffset = 0;
+        output.writeInt(symbolOffset);
+        for (byte[] bytes : symbolBytes) {
+            symbolOffset += bytes.length;
+            output.writeInt(symbolOffset);
+        }
+        for (byte[] bytes : symbolBytes) {
+            output.write(bytes);
+        }
+        for (int padding = symbolDataSize; padding < padded(symbolDataSize); padding++) {
+            output.write(0);
+        }
+
+        for (int node = 0; node < nodeCount; node++) {
+            output.writeInt(Arrays.binarySearch(symbols, ownerOf.applyAsInt(node)));
+            output.writeInt(Arrays.binarySearch(symbols, nameOf.applyAsInt(node)));
+            output.writeInt(typeOf.applyAsInt(node));
+        }
+    }
+
+    private static void writeRows(DataOutputStream output, GraphView graph, boolean forward) throws IOException {
+        int offset = 0;
+        output.writeInt(offset);
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            offset += forward ? graph.outDegree(node) : graph.inDegree(node);
+            output.writeInt(offset);
+        }
+
+        IOException[] failure = new IOException[1];
+        NodeConsumer writer = next -> {
+            try {
+                output.writeInt(next);
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        };
+        for (int node = 0; node < graph.nodeCount() && failure[0] == null; node++) {
+            if (forward) {
+                graph.forEachSuccessor(node, writer);
+            } else {
+                graph.forEachPredecessor(node, writer);
+            }
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    private static void writeWeights(DataOutputStream output, GraphView graph, boolean kinds) throws IOException {
+        IOException[] failure = new IOException[1];
+        graph.forEachWeightedEdge((source, destination, weight, edgeKinds) -> {
+            try {
+                output.writeInt(kinds ? edgeKinds : weight);
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    private static void writeOffsets(DataOutputStream output, int[] offsets) throws IOException {
+        for (int offset : offsets) {
+            output.writeInt(offset);
+        }
+    }
+
+    private static void copyInts(ByteBuffer rows, int from, int count, DataOutputStream output) throws IOException {
+        ByteBuffer ints = rows.slice(from * Integer.BYTES, count * Integer.BYTES);
+        byte[] chunk = new byte[BUFFER_SIZE];
+        while (ints.hasRemaining()) {
+            int length = Math.min(chunk.length, ints.remaining());
+            ints.get(chunk, 0, length);
+            output.write(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Sorts the first values, then keeps each of them once at the start, returns how many are kept.
+     */
+    private static int sortDistinct(int[] values, int size) {
+        Arrays.sort(values, 0, size);
+        int distinct = 0;
+        for (int index = 0; index < size; index++) {
+            if (distinct == 0 || values[index] != values[distinct - 1]) {
+                values[distinct++] = values[index];
+            }
+        }
+        return distinct;
+    }
+
+    @Override
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    @Override
+    public int getOwnerId(int node) {
+        return nodes.get(node * 3);
+    }
+
+    @Override
+    public int getNameId(int node) {
+        return nodes.get(node * 3 + 1);
+    }
+
+    @Override
+    public int getType(int node) {
+        return nodes.get(node * 3 + 2);
+    }
+
+    @Override
+    public String getSymbol(int symbolId) {
+        int start = symbolOffsets.get(symbolId);
+        byte[] bytes = new byte[symbolOffsets.get(symbolId + 1) - start];
+        symbolData.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int outDegree(int node) {
+        return offsets.get(node + 1) - offsets.get(node);
+    }
+
+    @Override
+    public int inDegree(int node) {
+        return reverseOffsets.get(node + 1) - reverseOffsets.get(node);
+    }
+
+    @Override
+    public boolean hasEdge(int source, int destination) {
+        return indexOf(source, destination) >= 0;
+    }
+
+    @Override
+    public int getWeight(int source, int destination) {
+        int index = indexOf(source, destination);
+        return index >= 0 ? weights.get(index) : 0;
+    }
+
+    @Override
+    public int getKinds(int source, int destination) {
+        int index = indexOf(source, destination);
+        return index >= 0 ? kinds.get(index) : EdgeKind.NONE;
+    }
+
+    private int indexOf(int source, int destination) {
+        int low = offsets.get(source);
+        int high = offsets.get(source + 1) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int target = targets.get(middle);
+            if (target < destination) {
+                low = middle + 1;
+            } else if (target > destination) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void forEachSuccessor(int node, NodeConsumer action) {
+        for (int index = offsets.get(node); index < offsets.get(node + 1); index++) {
+            action.accept(targets.get(index));
+        }
+    }
+
+    @Override
+    public void forEachPredecessor(int node, NodeConsumer action) {
+        for (int index = reverseOffsets.get(node); index < reverseOffsets.get(node + 1); index++) {
+            action.accept(sources.get(index));
+        }
+    }
+
+    @Override
+    public void forEachEdge(EdgeConsumer action) {
+        for (int node = 0; node < nodeCount; node++) {
+            for (int index = offsets.get(node); index < offsets.get(node + 1); index++) {
+                action.accept(node, targets.get(index));
+            }
+        }
+    }
+
+    @Override
+    public void forEachWeightedEdge(WeightedEdgeConsumer action) {
+        for (int node = 0; node < nodeCount; node++) {
+            for (int index = offsets.get(node); index < offsets.get(node + 1); index++) {
+                action.accept(node, targets.get(index), weights.get(index), kinds.get(index));
+            }
+        }
+    }
+
+    @Override
+    public void forEachWeightedEdge(int kinds, WeightedEdgeConsumer action) {
+        for (int node = 0; node < nodeCount; node++) {
+            for (int index = offsets.get(node); index < offsets.get(node + 1); index++) {
+                int edgeKinds = this.kinds.get(index);
+                if (EdgeKind.accepts(kinds, edgeKinds)) {
+                    action.accept(node, targets.get(index), weights.get(index), edgeKinds);
+                }
+            }
+        }
+    }
+
+    private static IntBuffer ints(ByteBuffer buffer, int position, int count) throws IOException {
+        if (count < 0 || position + (long) count * Integer.BYTES > buffer.limit()) {
+            throw new IOException("Truncated graph file");
+        }
+        return buffer.slice(position, count * Integer.BYTES).asIntBuffer();
+    }
+
+    private static int padded(int size) {
+        return (size + 3) & ~3;
+    }
+
+    @FunctionalInterface
+    private interface GraphWriter {
+        void write(DataOutputStream output) throws IOException;
+    }
+
+    /**
+     * Distinct component IDs, sorted and deduplicated whenever the array is full.
+     */
+    private static final class ComponentSet {
+        private int[] ids = new int[1024];
+        private int size;
+
+        void add(int id) {
+            // The sources come in order, their repeats are dropped at once
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                size = sortDistinct(ids, size);
+                if (size > ids.length / 2) {
+                    ids = Arrays.copyOf(ids, ids.length * 2);
+                }
+            }
+            ids[size++] = id;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ids, sortDistinct(ids, size));
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package com.anttree.flow.graph.model;
 
-public class Reference {
+/**
+ * Immutable edge of the reference graph, from a source to a destination component.
+ */
+public final class Reference {
 
-    private Component source;
-    private Component destination;
+    private final Component source;
+    private final Component destination;
+    private final int hash;
 
     public Reference(
             Component source,
@@ -11,6 +15,7 @@ public class Reference {
     ) {
         this.source = source;
         this.destination = destination;
+        this.hash = 31 * source.hashCode() + destination.hashCode();
     }
 
     public Component getSrc() {
@@ -26,15 +31,22 @@ public class Reference {
         return getSrc().toString() + " -> " + getDest().toString();
     }
 
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
     @Override
     public boolean equals(Object obj) {
-        if (obj == null) {
-            return false;
+        if (this == obj) {
+            return true;
         }
-        if (!(obj instanceof Component)) {
-            return super.equals(obj);
-        } else {
-            return this.toString().equals(obj.toString());
+        if (!(obj instanceof Reference)) {
+            return false;
         }
+        Reference other = (Reference) obj;
+        return hash == other.hash &&
+               source.equals(other.source) &&
+               destination.equals(other.destination);
     }
 }
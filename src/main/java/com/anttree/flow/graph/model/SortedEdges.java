@@ -0,0 +1,16 @@
+package com.anttree.flow.graph.model;
+
+import java.io.IOException;
+
+/**
+ * Edges visited in ascending order, by source then destination component,
+ * each edge once with its count and kinds. The edges can be visited more than once.
+ * <p>
+ * This is the order of the CSR rows, so that {@link MappedGraph} writes a graph
+ * from it without holding the edges in memory.
+ */
+@FunctionalInterface
+public interface SortedEdges {
+
+    void forEach(EdgeStore.EdgeConsumer action) throws IOException;
+}
@@ -0,0 +1,232 @@
+package com.anttree.flow.graph.model;
+
+import com.anttree.flow.graph.utils.ConcurrentLongIntMap;
+import com.anttree.flow.graph.utils.NodeUtils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns the class names and member signatures of the analysis to dense int IDs.
+ * <p>
+ * Every symbol is stored once, and referred to by its ID everywhere else.
+ * Class names are normalized and member signatures are built only the first
+ * time a spelling is seen, later lookups return the cached ID without
+ * building any string. IDs are never released, and are shared by every
+ * analysis of the process, so that components of different runs compare.
+ * <p>
+ * Components (owner, name, type) are interned the same way, their ID is the
+ * node ID the edges of an {@link EdgeStore} refer to.
+ */
+public final class SymbolTable {
+
+    private static final SymbolTable GLOBAL = new SymbolTable();
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    private final Map<String, Integer> classNames = new ConcurrentHashMap<>();  // raw spelling : normalized ID
+    private final ConcurrentLongIntMap methods = new ConcurrentLongIntMap();    // name ID, descriptor ID : ID
+    private final ConcurrentLongIntMap fields = new ConcurrentLongIntMap();     // name ID, type ID : ID
+
+    private final ConcurrentLongIntMap components = new ConcurrentLongIntMap(); // owner ID, name ID, type : ID
+
+    // Symbols by ID, in fixed size pages so that growing never moves a symbol
+    private volatile String[][] pages = new String[16][];
+    private volatile int size;
+
+    // Packed components by ID, same layout
+    private volatile long[][] componentPages = new long[16][];
+    private volatile int componentCount;
+
+    public static SymbolTable global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Returns the ID of the symbol, as is.
+     */
+    public int intern(String symbol) {
+        Integer id = ids.get(symbol);
+        if (id == null) {
+            id = ids.computeIfAbsent(symbol, this::append);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the ID of the normalized class name (Lb5/e; -> b5/e).
+     */
+    public int className(String className) {
+        Integer id = classNames.get(className);
+        if (id == null) {
+            id = classNames.computeIfAbsent(className, name ->
+                    intern(NodeUtils.normalizeClassName(name))
+            );
+        }
+        return id;
+    }
+
+    /**
+     * Returns the ID of the method signature (name + descriptor).
+     */
+    public int method(String name, String descriptor) {
+        long key = pack(intern(name), intern(descriptor));
+        int id = methods.get(key);
+        if (id < 0) {
+            id = methods.computeIfAbsent(key, k -> intern(name + descriptor));
+        }
+        return id;
+    }
+
+    /**
+     * Returns the ID of the field signature (normalized type + ":" + name).
+     */
+    public int field(String name, String descriptor) {
+        int typeId = className(descriptor);
+        long key = pack(intern(name), typeId);
+        int id = fields.get(key);
+        if (id < 0) {
+            id = fields.computeIfAbsent(key, k -> intern(get(typeId) + ":" + name));
+        }
+        return id;
+    }
+
+    public String get(int id) {
+        String[][] current = pages;
+        String[] page = id >= 0 && (id >>> PAGE_BITS) < current.length
+                ? current[id >>> PAGE_BITS]
+                : null;
+        String symbol = page != null ? page[id & (PAGE_SIZE - 1)] : null;
+        if (symbol == null) {
+            throw new IllegalArgumentException("Unknown symbol " + id);
+        }
+        return symbol;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    //+------------------------------------------------------------------------------------------+
+    // Components
+    //+------------------------------------------------------------------------------------------+
+
+    /**
+     * Returns the ID of the component, interning it if needed.
+     *
+     * @param owner ID of the owner class name
+     * @param name ID of the name
+     * @param type one of {@link ComponentType}
+     */
+    public int component(int owner, int name, int type) {
+        long key = packComponent(owner, name, type);
+        int id = components.get(key);
+        if (id < 0) {
+            id = components.computeIfAbsent(key, this::appendComponent);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the ID of the component, or -1 if it has never been interned.
+     */
+    public int findComponent(Component component) {
+        return components.get(packComponent(
+                component.getOwnerId(),
+                component.getNameId(),
+                component.getType()
+        ));
+    }
+
+    public Component getComponent(int id) {
+        long key = componentKey(id);
+        return new Component(componentOwner(key), componentName(key), componentType(key));
+    }
+
+    public int getComponentOwner(int id) {
+        return componentOwner(componentKey(id));
+    }
+
+    public int getComponentName(int id) {
+        return componentName(componentKey(id));
+    }
+
+    public int getComponentType(int id) {
+        return componentType(componentKey(id));
+    }
+
+    public int componentCount() {
+        return componentCount;
+    }
+
+    // Symbol IDs fit in 31 bits and component types in 2 bits: owner(31) | name(31) | type(2)
+    private static long packComponent(int owner, int name, int type) {
+        if (owner < 0 || name < 0 || type < 0 || type > 3) {
+            throw new IllegalArgumentException("Invalid component " + owner + "." + name + ":" + type);
+        }
+        return ((long) owner << 33) | ((long) name << 2) | type;
+    }
+
+    private static int componentOwner(long key) {
+        return (int) (key >>> 33);
+    }
+
+    private static int componentName(long key) {
+        return (int) (key >>> 2) & 0x7FFFFFFF;
+    }
+
+    private static int componentType(long key) {
+        return (int) key & 3;
+    }
+
+    private long componentKey(int id) {
+        long[][] current = componentPages;
+        long[] page = id >= 0 && (id >>> PAGE_BITS) < current.length
+                ? current[id >>> PAGE_BITS]
+                : null;
+        if (page == null || id >= componentCount) {
+            throw new IllegalArgumentException("Unknown component " + id);
+        }
+        return page[id & (PAGE_SIZE - 1)];
+    }
+
+    private synchronized int appendComponent(long key) {
+        int id = componentCount;
+        int page = id >>> PAGE_BITS;
+        long[][] current = componentPages;
+        if (page == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        if (current[page] == null) {
+            current[page] = new long[PAGE_SIZE];
+        }
+        current[page][id & (PAGE_SIZE - 1)] = key;
+        componentPages = current;
+        componentCount = id + 1;
+        return id;
+    }
+
+    private synchronized int append(String symbol) {
+        int id = size;
+        int page = id >>> PAGE_BITS;
+        String[][] current = pages;
+        if (page == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        if (current[page] == null) {
+            current[page] = new String[PAGE_SIZE];
+        }
+        current[page][id & (PAGE_SIZE - 1)] = symbol;
+        pages = current;
+        size = id + 1;
+        return id;
+    }
+
+    private static long pack(int first, int second) {
+        return ((long) first << 32) | (second & 0xFFFFFFFFL);
+    }
+}
@@ -1,5 +1,6 @@
 package com.anttree.flow.graph.options;
 
+import com.anttree.flow.graph.model.Constants;
 import joptsimple.OptionParser;
 
 public class ParserAssembler {
@@ -24,7 +25,14 @@ public class ParserAssembler {
                 .ofType(String.class)
                 .required()
                 .describedAs("define the input file. \n"
-                        + "currently this only takes .jar file as an input.");
+                        + "this takes a .jar file, or a classpath of .jar files and class directories\n"
+                        + "separated by the path separator (ex. app.jar:lib.jar:build/classes).\n"
+                        + ".jmod files, jrt:/ (or jrt:/module.name) and jlink image directories are accepted as well.\n"
+                        + "android .dex, .apk and .aab files are read natively, without any conversion.\n"
+                        + "dex classes only list their member classes as inner classes, the nested classes\n"
+                        + "they merely refer to are not linked as the class files do.\n"
+                        + "the first class found on the classpath shadows the following ones.\n"
+                        + "a graph file saved with --store is drawn without any analysis.");
 
         parser.accepts("out")
                 .withRequiredArg()
@@ -52,6 +60,66 @@ public class ParserAssembler {
                         + "if true, all anonymous classes will be included in a flow graph.\n"
                         + "set this flag to false to minify the graph size.");
 
+        parser.accepts("threads")
+                .withOptionalArg()
+                .ofType(Integer.class)
+                .defaultsTo(1)
+                .describedAs("number of threads used to load, parse and inspect the classes.\n"
+                        + "defaults to 1, give the number of available processors to spread the work.\n"
+                        + "the output is the same whatever the thread count is.");
+
+        parser.accepts("engine")
+                .withOptionalArg()
+                .ofType(String.class)
+                .defaultsTo(Constants.ENGINE_TREE)
+                .describedAs("reference extraction engine.\n"
+                        + "- \"tree\" inspects the parsed ClassNode trees.\n"
+                        + "- \"stream\" inspects the ClassReader callbacks, without building any tree.\n"
+                        + "- \"verify\" runs both and fails if their references differ.\n"
+                        + "when no engine is given, jar mode reads the references between classes straight\n"
+                        + "out of the class files (unless --kinds is given), and \"verify\"\n"
+                        + "then checks that scan against the tree engine instead.");
+
+        parser.accepts("cache")
+                .withOptionalArg()
+                .ofType(String.class)
+                .describedAs("file keeping the references of every class between two runs (jar mode).\n"
+                        + "classes whose CRC and size did not change since the last run reuse their\n"
+                        + "references, and are neither parsed nor inspected. created if absent.");
+
+        parser.accepts("max-heap-budget")
+                .withRequiredArg()
+                .ofType(String.class)
+                .describedAs("heap the analysis may take, in bytes or with a k, m or g suffix (ex. 512m).\n"
+                        + "classes are parsed and inspected a chunk at a time and evicted afterwards,\n"
+                        + "and the edges are spilled to sorted temporary files, merged back at the end.\n"
+                        + "keep it below -Xmx. with --store, the files are merged straight into the stored\n"
+                        + "graph, which is never built on heap, otherwise the graph still has to fit in the heap.");
+
+        parser.accepts("metrics")
+                .withOptionalArg()
+                .ofType(Boolean.class)
+                .defaultsTo(false)
+                .describedAs("print the inspection statistics : references found, references merged\n"
+                        + "in the local buffers of the workers, and the contention on the shared edge store.");
+
+        parser.accepts("kinds")
+                .withOptionalArg()
+                .ofType(String.class)
+                .defaultsTo("all")
+                .describedAs("comma separated kinds of the references to draw.\n"
+                        + "extends, implements, inner, new, checkcast (and instanceof), invoke,\n"
+                        + "field (get and put), ldc (class constants), signature (declared types) or all.\n"
+                        + "the kinds are kept in the graph, so a stored graph can be drawn with other kinds.");
+
+        parser.accepts("store")
+                .withOptionalArg()
+                .ofType(String.class)
+                .describedAs("save the reference graph to this file, read back through a memory mapping.\n"
+                        + "the file can be given to --in on the next run, to draw it again without any analysis.\n"
+                        + "the graph is stored as analysed, --target is not applied to a stored graph.\n"
+                        + "in jar mode, the class file scan stores the references between classes only.");
+
         //+------------------------------------------------------------------------------------------+
         // Etc
         //+------------------------------------------------------------------------------------------+
@@ -0,0 +1,105 @@
+package com.anttree.flow.graph.utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.LongToIntFunction;
+
+/**
+ * Map of long keys to positive int values, without any boxing.
+ * <p>
+ * Lookups are lock free and allocate nothing, insertions are serialized.
+ * Open addressing with linear probing: a slot is published by writing its
+ * value (stored + 1, 0 being the empty slot) with release semantics once its
+ * key is written, and a grown table is only published once complete.
+ */
+public final class ConcurrentLongIntMap {
+
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final int MIN_CAPACITY = 64;
+
+    private static final class Table {
+        final long[] keys;
+        final int[] values;
+
+        Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new int[capacity];
+        }
+    }
+
+    private volatile Table table = new Table(MIN_CAPACITY);
+    private int size;
+
+    /**
+     * Returns the value of the key, or -1 if there is none.
+     */
+    public int get(long key) {
+        Table current = table;
+        int mask = current.keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            int value = (int) VALUES.getAcquire(current.values, slot);
+            if (value == 0) {
+                return -1;
+            }
+            if (current.keys[slot] == key) {
+                return value - 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the value of the key, computing and storing it if there is none.
+     * The function is called at most once per key, and must return a positive value.
+     */
+    public int computeIfAbsent(long key, LongToIntFunction function) {
+        int value = get(key);
+        if (value >= 0) {
+            return value;
+        }
+        synchronized (this) {
+            value = get(key);
+            if (value >= 0) {
+                return value;
+            }
+            value = function.applyAsInt(key);
+            if (value < 0) {
+                throw new IllegalArgumentException("Negative value " + value);
+            }
+            if (size + 1 > table.keys.length >>> 1) {
+                table = rehash(table, table.keys.length << 1);
+            }
+            insert(table, key, value);
+            size++;
+            return value;
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private static void insert(Table table, long key, int value) {
+        int mask = table.keys.length - 1;
+        int slot = mix(key) & mask;
+        while (table.values[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table.keys[slot] = key;
+        VALUES.setRelease(table.values, slot, value + 1);
+    }
+
+    private static Table rehash(Table previous, int capacity) {
+        Table table = new Table(capacity);
+        for (int slot = 0; slot < previous.keys.length; slot++) {
+            if (previous.values[slot] != 0) {
+                insert(table, previous.keys[slot], previous.values[slot] - 1);
+            }
+        }
+        return table;
+    }
+
+    private static int mix(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
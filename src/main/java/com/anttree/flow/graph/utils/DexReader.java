@@ -0,0 +1,650 @@
+package com.anttree.flow.graph.utils;
+
+import org.objectweb.asm.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reader of a single .dex file, driving a {@link ClassVisitor} the same way {@link ClassReader} does.
+ * <p>
+ * Only what the inspections read is visited : the class header, the inner classes,
+ * the fields, the methods (with their generic signatures) and, in the method bodies,
+ * the instructions which refer to a type, a field or a method.
+ * <p>
+ * The inner classes only come from the MemberClasses and InnerClass annotations, so a class
+ * lists its own member classes and itself when nested. The nested classes a class file lists
+ * because it merely refers to them (the other entries of its InnerClasses attribute) have no
+ * dex equivalent, so dex input misses these inner class references.
+ * <p>
+ * Everything is read with absolute positions from the buffer, so a single instance can
+ * be shared between threads.
+ */
+public class DexReader {
+
+    private static final int NO_INDEX           = -1;
+
+    // Encoded value types
+    private static final int VALUE_STRING       = 0x17;
+    private static final int VALUE_TYPE         = 0x18;
+    private static final int VALUE_ARRAY        = 0x1c;
+    private static final int VALUE_ANNOTATION   = 0x1d;
+    private static final int VALUE_NULL         = 0x1e;
+    private static final int VALUE_BOOLEAN      = 0x1f;
+
+    private static final String SIGNATURE_ANNOTATION        = "Ldalvik/annotation/Signature;";
+    private static final String INNER_CLASS_ANNOTATION      = "Ldalvik/annotation/InnerClass;";
+    private static final String MEMBER_CLASSES_ANNOTATION   = "Ldalvik/annotation/MemberClasses;";
+    private static final String ENCLOSING_CLASS_ANNOTATION  = "Ldalvik/annotation/EnclosingClass;";
+
+    /**
+     * Instruction sizes in 16-bit code units, indexed by opcode.
+     */
+    private static final int[] INSTRUCTION_SIZES = new int[256];
+
+    static {
+        int[][] sizes = {
+                // {first opcode, last opcode, size}
+                {0x00, 0x01, 1}, {0x02, 0x02, 2}, {0x03, 0x03, 3},
+                {0x04, 0x04, 1}, {0x05, 0x05, 2}, {0x06, 0x06, 3},
+                {0x07, 0x07, 1}, {0x08, 0x08, 2}, {0x09, 0x09, 3},
+                {0x0a, 0x12, 1}, {0x13, 0x13, 2}, {0x14, 0x14, 3},
+                {0x15, 0x16, 2}, {0x17, 0x17, 3}, {0x18, 0x18, 5},
+                {0x19, 0x1a, 2}, {0x1b, 0x1b, 3}, {0x1c, 0x1c, 2},
+                {0x1d, 0x1e, 1}, {0x1f, 0x20, 2}, {0x21, 0x21, 1},
+                {0x22, 0x23, 2}, {0x24, 0x26, 3}, {0x27, 0x28, 1},
+                {0x29, 0x29, 2}, {0x2a, 0x2c, 3}, {0x2d, 0x3d, 2},
+                {0x3e, 0x43, 1}, {0x44, 0x6d, 2}, {0x6e, 0x72, 3},
+                {0x73, 0x73, 1}, {0x74, 0x78, 3}, {0x79, 0x8f, 1},
+                {0x90, 0xaf, 2}, {0xb0, 0xcf, 1}, {0xd0, 0xe2, 2},
+                {0xe3, 0xf9, 1}, {0xfa, 0xfb, 4}, {0xfc, 0xfd, 3},
+                {0xfe, 0xff, 2}
+        };
+        for (int[] range : sizes) {
+            for (int opcode = range[0]; opcode <= range[1]; opcode++) {
+                INSTRUCTION_SIZES[opcode] = range[2];
+            }
+        }
+    }
+
+    private final ByteBuffer buffer;
+
+    private final int stringIdsOffset;
+    private final int typeIdsOffset;
+    private final int protoIdsOffset;
+    private final int fieldIdsOffset;
+    private final int methodIdsOffset;
+    private final int classDefsOffset;
+    private final int classDefsSize;
+
+    private final String[] strings;
+
+    public DexReader(ByteBuffer dex) throws IOException {
+        this.buffer = dex.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.buffer.clear();
+
+        if (buffer.limit() < 0x70 ||
+            buffer.get(0) != 'd' || buffer.get(1) != 'e' || buffer.get(2) != 'x'
+        ) {
+            throw new IOException("Not a dex file");
+        }
+        if (buffer.getInt(40) != 0x12345678) {
+            throw new IOException("Unsupported dex endianness");
+        }
+
+        this.strings = new String[buffer.getInt(56)];
+        this.stringIdsOffset = buffer.getInt(60);
+        this.typeIdsOffset = buffer.getInt(68);
+        this.protoIdsOffset = buffer.getInt(76);
+        this.fieldIdsOffset = buffer.getInt(84);
+        this.methodIdsOffset = buffer.getInt(92);
+        this.classDefsSize = buffer.getInt(96);
+        this.classDefsOffset = buffer.getInt(100);
+    }
+
+    public int getClassCount() {
+        return classDefsSize;
+    }
+
+    /**
+     * @return the internal name of the class defined at the index (com/example/Main)
+     */
+    public String getClassName(int classDefIndex) {
+        return getInternalName(buffer.getInt(classDef(classDefIndex)));
+    }
+
+    public void accept(int classDefIndex, ClassVisitor classVisitor, int parsingOptions) {
+        int classDef = classDef(classDefIndex);
+        String className = getInternalName(buffer.getInt(classDef));
+        int access = buffer.getInt(classDef + 4);
+        int superClassIndex = buffer.getInt(classDef + 8);
+        int interfacesOffset = buffer.getInt(classDef + 12);
+        int annotationsOffset = buffer.getInt(classDef + 20);
+        int classDataOffset = buffer.getInt(classDef + 24);
+
+        List<String> interfaces = new ArrayList<>();
+        for (int typeIndex : readTypeList(interfacesOffset)) {
+            interfaces.add(getInternalName(typeIndex));
+        }
+
+        Annotations annotations = new Annotations(annotationsOffset);
+
+        classVisitor.visit(
+                Opcodes.V1_8,
+                access & 0xFFFF,
+                className,
+                readSignature(annotations.classAnnotations),
+                superClassIndex == NO_INDEX ? null : getInternalName(superClassIndex),
+                interfaces.toArray(new String[0])
+        );
+
+        visitInnerClasses(className, annotations.classAnnotations, classVisitor);
+
+        if (classDataOffset != 0) {
+            visitClassData(classDataOffset, annotations, classVisitor, parsingOptions);
+        }
+        classVisitor.visitEnd();
+    }
+
+    //+------------------------------------------------------------------------------------------+
+    // Class content
+    //+------------------------------------------------------------------------------------------+
+    private void visitInnerClasses(String className, int classAnnotations, ClassVisitor classVisitor) {
+        Cursor cursor = new Cursor();
+
+        for (int annotation : readAnnotationSet(classAnnotations)) {
+            cursor.position = annotation + 1; // visibility
+            String type = getTypeDescriptor(readUleb128(cursor));
+            int size = readUleb128(cursor);
+
+            for (int element = 0; element < size; element++) {
+                String name = getString(readUleb128(cursor));
+                if (MEMBER_CLASSES_ANNOTATION.equals(type) && "value".equals(name)) {
+                    for (int memberType : readIndexArray(cursor, VALUE_TYPE)) {
+                        String memberName = getInternalName(memberType);
+                        classVisitor.visitInnerClass(memberName, className, null, 0);
+                    }
+                } else if (INNER_CLASS_ANNOTATION.equals(type) && "name".equals(name)) {
+                    int[] innerName = readIndexArray(cursor, VALUE_STRING);
+                    classVisitor.visitInnerClass(
+                            className,
+                            readEnclosingClass(classAnnotations),
+                            innerName.length > 0 ? getString(innerName[0]) : null,
+                            0
+                    );
+                } else {
+                    skipEncodedValue(cursor);
+                }
+            }
+        }
+    }
+
+    private String readEnclosingClass(int classAnnotations) {
+        int annotation = findAnnotation(classAnnotations, ENCLOSING_CLASS_ANNOTATION);
+        if (annotation == 0) {
+            return null;
+        }
+        int[] types = readAnnotationValue(annotation, VALUE_TYPE);
+        return types.length > 0 ? getInternalName(types[0]) : null;
+    }
+
+    private void visitClassData(
+            int classDataOffset,
+            Annotations annotations,
+            ClassVisitor classVisitor,
+            int parsingOptions
+    ) {
+        Cursor cursor = new Cursor();
+        cursor.position = classDataOffset;
+
+        int staticFields = readUleb128(cursor);
+        int instanceFields = readUleb128(cursor);
+        int directMethods = readUleb128(cursor);
+        int virtualMethods = readUleb128(cursor);
+
+        int fieldIndex = 0;
+        for (int field = 0; field < staticFields + instanceFields; field++) {
+            if (field == staticFields) {
+                fieldIndex = 0; // indices restart for the instance fields
+            }
+            fieldIndex += readUleb128(cursor);
+            int access = readUleb128(cursor);
+
+            int fieldId = fieldIdsOffset + fieldIndex * 8;
+            FieldVisitor fieldVisitor = classVisitor.visitField(
+                    access & 0xFFFF,
+                    getString(buffer.getInt(fieldId + 4)),
+                    getTypeDescriptor(buffer.getShort(fieldId + 2) & 0xFFFF),
+                    readSignature(annotations.getFieldAnnotations(fieldIndex)),
+                    null
+            );
+            if (fieldVisitor != null) {
+                fieldVisitor.visitEnd();
+            }
+        }
+
+        int methodIndex = 0;
+        for (int method = 0; method < directMethods + virtualMethods; method++) {
+            if (method == directMethods) {
+                methodIndex = 0; // indices restart for the virtual methods
+            }
+            methodIndex += readUleb128(cursor);
+            int access = readUleb128(cursor);
+            int codeOffset = readUleb128(cursor);
+
+            int methodId = methodIdsOffset + methodIndex * 8;
+            MethodVisitor methodVisitor = classVisitor.visitMethod(
+                    access & 0xFFFF,
+                    getString(buffer.getInt(methodId + 4)),
+                    getMethodDescriptor(buffer.getShort(methodId + 2) & 0xFFFF),
+                    readSignature(annotations.getMethodAnnotations(methodIndex)),
+                    null
+            );
+            if (methodVisitor == null) {
+                continue;
+            }
+            if (codeOffset != 0 && (parsingOptions & ClassReader.SKIP_CODE) == 0) {
+                methodVisitor.visitCode();
+                visitCode(codeOffset, methodVisitor);
+                methodVisitor.visitMaxs(0, 0);
+            }
+            methodVisitor.visitEnd();
+        }
+    }
+
+    /**
+     * Visits the instructions referring to a type, a field or a method,
+     * translated to their closest bytecode equivalent.
+     */
+    private void visitCode(int codeOffset, MethodVisitor methodVisitor) {
+        int instructionsSize = buffer.getInt(codeOffset + 12);
+        int instructions = codeOffset + 16;
+
+        int pc = 0;
+        while (pc < instructionsSize) {
+            int unit = readCodeUnit(instructions, pc);
+            int opcode = unit & 0xFF;
+
+            if (opcode == 0x00 && unit != 0x0000) {
+                pc += getPayloadSize(instructions, pc, unit);
+                continue;
+            }
+
+            switch (opcode) {
+                case 0x1c: // const-class
+                    methodVisitor.visitLdcInsn(Type.getType(
+                            getTypeDescriptor(readCodeUnit(instructions, pc + 1))
+                    ));
+                    break;
+                case 0x1f: // check-cast
+                    visitTypeInstruction(Opcodes.CHECKCAST, readCodeUnit(instructions, pc + 1), methodVisitor);
+                    break;
+                case 0x20: // instance-of
+                    visitTypeInstruction(Opcodes.INSTANCEOF, readCodeUnit(instructions, pc + 1), methodVisitor);
+                    break;
+                case 0x22: // new-instance
+                    visitTypeInstruction(Opcodes.NEW, readCodeUnit(instructions, pc + 1), methodVisitor);
+                    break;
+                case 0x23: // new-array
+                case 0x24: // filled-new-array
+                case 0x25: // filled-new-array/range
+                    visitNewArray(getTypeDescriptor(readCodeUnit(instructions, pc + 1)), methodVisitor);
+                    break;
+                case 0x6e: case 0x74: // invoke-virtual
+                case 0xfa: case 0xfb: // invoke-polymorphic
+                    visitMethodInstruction(Opcodes.INVOKEVIRTUAL, instructions, pc, opcode >= 0xfa, methodVisitor);
+                    break;
+                case 0x6f: case 0x75: // invoke-super
+                case 0x70: case 0x76: // invoke-direct
+                    visitMethodInstruction(Opcodes.INVOKESPECIAL, instructions, pc, false, methodVisitor);
+                    break;
+                case 0x71: case 0x77: // invoke-static
+                    visitMethodInstruction(Opcodes.INVOKESTATIC, instructions, pc, false, methodVisitor);
+                    break;
+                case 0x72: case 0x78: // invoke-interface
+                    visitMethodInstruction(Opcodes.INVOKEINTERFACE, instructions, pc, false, methodVisitor);
+                    break;
+                default:
+                    if (opcode >= 0x52 && opcode <= 0x6d) { // iget, iput, sget, sput
+                        visitFieldInstruction(
+                                opcode <= 0x58 ? Opcodes.GETFIELD
+                                        : opcode <= 0x5f ? Opcodes.PUTFIELD
+                                        : opcode <= 0x66 ? Opcodes.GETSTATIC
+                                        : Opcodes.PUTSTATIC,
+                                readCodeUnit(instructions, pc + 1),
+                                methodVisitor
+                        );
+                    }
+                    break;
+            }
+            pc += INSTRUCTION_SIZES[opcode];
+        }
+    }
+
+    private void visitTypeInstruction(int opcode, int typeIndex, MethodVisitor methodVisitor) {
+        methodVisitor.visitTypeInsn(opcode, getInternalName(typeIndex));
+    }
+
+    private void visitNewArray(String arrayDescriptor, MethodVisitor methodVisitor) {
+        String elementDescriptor = arrayDescriptor.substring(1);
+        char sort = elementDescriptor.charAt(0);
+        if (sort == 'L' || sort == '[') {
+            methodVisitor.visitTypeInsn(Opcodes.ANEWARRAY, Type.getType(elementDescriptor).getInternalName());
+        }
+        // Arrays of primitives do not refer to any class
+    }
+
+    private void visitFieldInstruction(int opcode, int fieldIndex, MethodVisitor methodVisitor) {
+        int fieldId = fieldIdsOffset + fieldIndex * 8;
+        methodVisitor.visitFieldInsn(
+                opcode,
+                getInternalName(buffer.getShort(fieldId) & 0xFFFF),
+                getString(buffer.getInt(fieldId + 4)),
+                getTypeDescriptor(buffer.getShort(fieldId + 2) & 0xFFFF)
+        );
+    }
+
+    private void visitMethodInstruction(
+            int opcode,
+            int instructions,
+            int pc,
+            boolean polymorphic,
+            MethodVisitor methodVisitor
+    ) {
+        int methodId = methodIdsOffset + readCodeUnit(instructions, pc + 1) * 8;
+        int protoIndex = polymorphic
+                // the call site prototype, like the descriptor of invokevirtual MethodHandle.invoke
+                ? readCodeUnit(instructions, pc + 3)
+                : buffer.getShort(methodId + 2) & 0xFFFF;
+
+        methodVisitor.visitMethodInsn(
+                opcode,
+                getInternalName(buffer.getShort(methodId) & 0xFFFF),
+                getString(buffer.getInt(methodId + 4)),
+                getMethodDescriptor(protoIndex),
+                opcode == Opcodes.INVOKEINTERFACE
+        );
+    }
+
+    private int getPayloadSize(int instructions, int pc, int identifier) {
+        switch (identifier) {
+            case 0x0100: // packed-switch-payload
+                return readCodeUnit(instructions, pc + 1) * 2 + 4;
+            case 0x0200: // sparse-switch-payload
+                return readCodeUnit(instructions, pc + 1) * 4 + 2;
+            case 0x0300: // fill-array-data-payload
+                int width = readCodeUnit(instructions, pc + 1);
+                long size = buffer.getInt(instructions + (pc + 2) * 2) & 0xFFFFFFFFL;
+                return (int) ((size * width + 1) / 2 + 4);
+            default:
+                return 1;
+        }
+    }
+
+    private int readCodeUnit(int instructions, int pc) {
+        return buffer.getShort(instructions + pc * 2) & 0xFFFF;
+    }
+
+    //+------------------------------------------------------------------------------------------+
+    // Annotations
+    //+------------------------------------------------------------------------------------------+
+    private class Annotations {
+        private final int classAnnotations;
+        private final int fieldsSize;
+        private final int methodsSize;
+        private final int fields;
+        private final int methods;
+
+        Annotations(int directoryOffset) {
+            if (directoryOffset == 0) {
+                classAnnotations = fieldsSize = methodsSize = fields = methods = 0;
+                return;
+            }
+            classAnnotations = buffer.getInt(directoryOffset);
+            fieldsSize = buffer.getInt(directoryOffset + 4);
+            methodsSize = buffer.getInt(directoryOffset + 8);
+            fields = directoryOffset + 16;
+            methods = fields + fieldsSize * 8;
+        }
+
+        int getFieldAnnotations(int fieldIndex) {
+            return find(fields, fieldsSize, fieldIndex);
+        }
+
+        int getMethodAnnotations(int methodIndex) {
+            return find(methods, methodsSize, methodIndex);
+        }
+
+        private int find(int items, int size, int index) {
+            for (int item = 0; item < size; item++) {
+                if (buffer.getInt(items + item * 8) == index) {
+                    return buffer.getInt(items + item * 8 + 4);
+                }
+            }
+            return 0;
+        }
+    }
+
+    private int[] readAnnotationSet(int annotationSetOffset) {
+        if (annotationSetOffset == 0) {
+            return new int[0];
+        }
+        int[] annotations = new int[buffer.getInt(annotationSetOffset)];
+        for (int index = 0; index < annotations.length; index++) {
+            annotations[index] = buffer.getInt(annotationSetOffset + 4 + index * 4);
+        }
+        return annotations;
+    }
+
+    private int findAnnotation(int annotationSetOffset, String annotationType) {
+        Cursor cursor = new Cursor();
+        for (int annotation : readAnnotationSet(annotationSetOffset)) {
+            cursor.position = annotation + 1;
+            if (annotationType.equals(getTypeDescriptor(readUleb128(cursor)))) {
+                return annotation;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Reads the generic signature, stored as the string array of a Signature annotation.
+     */
+    private String readSignature(int annotationSetOffset) {
+        int annotation = findAnnotation(annotationSetOffset, SIGNATURE_ANNOTATION);
+        if (annotation == 0) {
+            return null;
+        }
+        StringBuilder signature = new StringBuilder();
+        for (int stringIndex : readAnnotationValue(annotation, VALUE_STRING)) {
+            signature.append(getString(stringIndex));
+        }
+        return signature.toString();
+    }
+
+    /**
+     * Reads the indices held by the "value" element of the annotation.
+     */
+    private int[] readAnnotationValue(int annotation, int valueType) {
+        Cursor cursor = new Cursor();
+        cursor.position = annotation + 1;
+        readUleb128(cursor); // type
+        int size = readUleb128(cursor);
+
+        for (int element = 0; element < size; element++) {
+            String name = getString(readUleb128(cursor));
+            if ("value".equals(name)) {
+                return readIndexArray(cursor, valueType);
+            }
+            skipEncodedValue(cursor);
+        }
+        return new int[0];
+    }
+
+    /**
+     * Reads an encoded value of the given index type, or an array of them.
+     */
+    private int[] readIndexArray(Cursor cursor, int valueType) {
+        int header = buffer.get(cursor.position) & 0xFF;
+        int type = header & 0x1F;
+
+        if (type == valueType) {
+            cursor.position++;
+            int index = readUnsignedValue(cursor, (header >> 5) + 1);
+            return new int[]{index};
+        }
+        if (type != VALUE_ARRAY) {
+            skipEncodedValue(cursor);
+            return new int[0];
+        }
+
+        cursor.position++;
+        int size = readUleb128(cursor);
+        List<Integer> indices = new ArrayList<>();
+        for (int element = 0; element < size; element++) {
+            int elementHeader = buffer.get(cursor.position) & 0xFF;
+            if ((elementHeader & 0x1F) == valueType) {
+                cursor.position++;
+                indices.add(readUnsignedValue(cursor, (elementHeader >> 5) + 1));
+            } else {
+                skipEncodedValue(cursor);
+            }
+        }
+        return indices.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private void skipEncodedValue(Cursor cursor) {
+        int header = buffer.get(cursor.position++) & 0xFF;
+        int type = header & 0x1F;
+        int argument = header >> 5;
+
+        switch (type) {
+            case VALUE_ARRAY:
+                int size = readUleb128(cursor);
+                for (int element = 0; element < size; element++) {
+                    skipEncodedValue(cursor);
+                }
+                break;
+            case VALUE_ANNOTATION:
+                readUleb128(cursor); // type
+                int elements = readUleb128(cursor);
+                for (int element = 0; element < elements; element++) {
+                    readUleb128(cursor); // name
+                    skipEncodedValue(cursor);
+                }
+                break;
+            case VALUE_NULL:
+            case VALUE_BOOLEAN:
+                break;
+            default:
+                cursor.position += argument + 1;
+                break;
+        }
+    }
+
+    private int readUnsignedValue(Cursor cursor, int size) {
+        int value = 0;
+        for (int index = 0; index < size; index++) {
+            value |= (buffer.get(cursor.position++) & 0xFF) << (index * 8);
+        }
+        return value;
+    }
+
+    //+------------------------------------------------------------------------------------------+
+    // Ids
+    //+------------------------------------------------------------------------------------------+
+    private int classDef(int classDefIndex) {
+        return classDefsOffset + classDefIndex * 32;
+    }
+
+    private int[] readTypeList(int typeListOffset) {
+        if (typeListOffset == 0) {
+            return new int[0];
+        }
+        int[] types = new int[buffer.getInt(typeListOffset)];
+        for (int index = 0; index < types.length; index++) {
+            types[index] = buffer.getShort(typeListOffset + 4 + index * 2) & 0xFFFF;
+        }
+        return types;
+    }
+
+    private String getTypeDescriptor(int typeIndex) {
+        return getString(buffer.getInt(typeIdsOffset + typeIndex * 4));
+    }
+
+    /**
+     * Lcom/example/Main; -> com/example/Main, array descriptors are kept as is.
+     */
+    private String getInternalName(int typeIndex) {
+        String descriptor = getTypeDescriptor(typeIndex);
+        if (descriptor.startsWith("L") && descriptor.endsWith(";")) {
+            return descriptor.substring(1, descriptor.length() - 1);
+        }
+        return descriptor;
+    }
+
+    private String getMethodDescriptor(int protoIndex) {
+        int protoId = protoIdsOffset + protoIndex * 12;
+        StringBuilder descriptor = new StringBuilder("(");
+        for (int typeIndex : readTypeList(buffer.getInt(protoId + 8))) {
+            descriptor.append(getTypeDescriptor(typeIndex));
+        }
+        return descriptor.append(')')
+                .append(getTypeDescriptor(buffer.getInt(protoId + 4)))
+                .toString();
+    }
+
+    private String getString(int stringIndex) {
+        String string = strings[stringIndex];
+        if (string == null) {
+            // Racy but safe, the decoded strings are always equal
+            string = strings[stringIndex] = decodeString(buffer.getInt(stringIdsOffset + stringIndex * 4));
+        }
+        return string;
+    }
+
+    /**
+     * Decodes a string_data_item, in MUTF-8.
+     */
+    private String decodeString(int stringDataOffset) {
+        Cursor cursor = new Cursor();
+        cursor.position = stringDataOffset;
+        int length = readUleb128(cursor);
+
+        char[] chars = new char[length];
+        int position = cursor.position;
+        for (int index = 0; index < length; index++) {
+            int first = buffer.get(position++) & 0xFF;
+            if (first < 0x80) {
+                chars[index] = (char) first;
+            } else if ((first & 0xE0) == 0xC0) {
+                int second = buffer.get(position++) & 0x3F;
+                chars[index] = (char) (((first & 0x1F) << 6) | second);
+            } else {
+                int second = buffer.get(position++) & 0x3F;
+                int third = buffer.get(position++) & 0x3F;
+                chars[index] = (char) (((first & 0x0F) << 12) | (second << 6) | third);
+            }
+        }
+        return new String(chars);
+    }
+
+    private static class Cursor {
+        int position;
+    }
+
+    private int readUleb128(Cursor cursor) {
+        int result = 0;
+        int shift = 0;
+        int current;
+        do {
+            current = buffer.get(cursor.position++) & 0xFF;
+            result |= (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0 && shift < 35);
+        return result;
+    }
+}
@@ -0,0 +1,127 @@
+package com.anttree.flow.graph.utils;
+
+import com.anttree.flow.graph.analysis.ClassRepository;
+import com.anttree.flow.graph.analysis.ClassSource;
+import com.anttree.flow.graph.model.Ext;
+import org.objectweb.asm.ClassVisitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+public class DexUtils {
+
+    private static final String NESTED_SEPARATOR = "!/";
+
+    // classes.dex, classes2.dex ... at the root of an apk, under */dex/ in an aab
+    private static final Pattern DEX_ENTRY = Pattern.compile("^(.*/)?classes(\\d*)\\.dex$");
+
+    public static boolean isDexInput(String inputFile) {
+        return inputFile.endsWith(Ext.DEX) ||
+               inputFile.endsWith(Ext.APK) ||
+               inputFile.endsWith(Ext.AAB);
+    }
+
+    public static ClassRepository index(
+            String inputFile,
+            int threads
+    ) throws IOException {
+        if (inputFile.endsWith(Ext.DEX)) {
+            return indexDex(inputFile);
+        }
+        return indexApk(inputFile, threads);
+    }
+
+    /**
+     * Indexes the classes defined in a memory-mapped .dex file.
+     */
+    public static ClassRepository indexDex(
+            String inputFile
+    ) throws IOException {
+        DexReader dex;
+        try (FileChannel channel = FileChannel.open(Path.of(inputFile), StandardOpenOption.READ)) {
+            dex = new DexReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        ClassRepository classes = new ClassRepository();
+        register(dex, new File(inputFile).getName(), classes);
+        return classes;
+    }
+
+    /**
+     * Indexes the classes of every classesN.dex of an .apk or an .aab.
+     * The dex files are read in parallel, then registered in their multidex order.
+     */
+    public static ClassRepository indexApk(
+            String inputFile,
+            int threads
+    ) throws IOException {
+        MappedJar apk = MappedJar.open(inputFile);
+        List<MappedJar.Entry> dexEntries = apk.getEntries().stream()
+                .filter(entry -> DEX_ENTRY.matcher(entry.getName()).matches())
+                .sorted(Comparator.comparing(DexUtils::getModuleName)
+                        .thenComparingInt(DexUtils::getDexNumber))
+                .collect(Collectors.toList());
+
+        DexReader[] dexFiles = new DexReader[dexEntries.size()];
+        ParallelUtils.forEach(threads, dexEntries.size(), index -> {
+            try {
+                dexFiles[index] = new DexReader(apk.data(dexEntries.get(index)));
+            } catch (IOException e) {
+                //Ignore the dex files which can not be read
+                e.printStackTrace();
+            }
+        });
+
+        String origin = new File(inputFile).getName();
+        ClassRepository classes = new ClassRepository();
+        for (int index = 0; index < dexFiles.length; index++) {
+            if (dexFiles[index] != null) {
+                register(
+                        dexFiles[index],
+                        origin + NESTED_SEPARATOR + dexEntries.get(index).getName(),
+                        classes
+                );
+            }
+        }
+        return classes;
+    }
+
+    private static void register(DexReader dex, String origin, ClassRepository classes) {
+        for (int index = 0; index < dex.getClassCount(); index++) {
+            int classDefIndex = index;
+            classes.register(
+                    dex.getClassName(classDefIndex) + Ext.CLASS,
+                    new ClassSource(origin, () -> {
+                        throw new IOException("Classes of " + origin + " are not class files");
+                    }) {
+                        @Override
+                        public boolean isClassFile() {
+                            return false;
+                        }
+
+                        @Override
+                        public void accept(ClassVisitor classVisitor, int parsingOptions) {
+                            dex.accept(classDefIndex, classVisitor, parsingOptions);
+                        }
+                    }
+            );
+        }
+    }
+
+    private static String getModuleName(MappedJar.Entry entry) {
+        Matcher matcher = DEX_ENTRY.matcher(entry.getName());
+        return matcher.matches() && matcher.group(1) != null ? matcher.group(1) : "";
+    }
+
+    private static int getDexNumber(MappedJar.Entry entry) {
+        Matcher matcher = DEX_ENTRY.matcher(entry.getName());
+        return matcher.matches() && !matcher.group(2).isEmpty() ? Integer.parseInt(matcher.group(2)) : 1;
+    }
+}
@@ -0,0 +1,140 @@
+package com.anttree.flow.graph.utils;
+
+import com.anttree.flow.graph.analysis.ClassRepository;
+import com.anttree.flow.graph.analysis.ClassSource;
+import com.anttree.flow.graph.model.Ext;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+public class DirectoryUtils {
+
+    public static HashMap<String, ClassNode> getEntries(
+            String inputDirectory,
+            int threads
+    ) throws IOException {
+        return new HashMap<>(index(inputDirectory, threads).materialize(threads));
+    }
+
+    /**
+     * Indexes the class files of an exploded class directory (build/classes/java/main),
+     * the entry names being the paths relative to the directory (com/example/Main.class).
+     * The directory tree is walked in parallel, the class files are only read when parsed.
+     */
+    public static ClassRepository index(
+            String inputDirectory,
+            int threads
+    ) throws IOException {
+        Path root = Path.of(inputDirectory);
+        String origin = root.getFileName() != null
+                ? root.getFileName().toString()
+                : root.toString();
+
+        ClassRepository classes = new ClassRepository();
+        for (Path classFile : walk(root, threads)) {
+            classes.register(
+                    getEntryName(root, classFile),
+                    new ClassSource(origin, () -> readClassFile(classFile))
+            );
+        }
+        return classes;
+    }
+
+    /**
+     * Lists the class files under the directory, walking the subdirectories in parallel.
+     * Works on any file system (default, jrt:/, zip ...).
+     */
+    static List<Path> walk(Path root, int threads) throws IOException {
+        List<Path> classFiles;
+        try {
+            classFiles = ParallelUtils.invoke(threads, new DirectoryWalk(root));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        // Walk order depends on the scheduling, the registration order must not
+        Collections.sort(classFiles);
+        return classFiles;
+    }
+
+    static byte[] readClassFile(Path classFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(classFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(classFile + " is too large to be read");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Read until the end of the file
+            }
+            if (buffer.hasRemaining()) {
+                throw new IOException("Truncated class file " + classFile);
+            }
+            return buffer.array();
+        }
+    }
+
+    static String getEntryName(Path root, Path classFile) {
+        StringBuilder entryName = new StringBuilder();
+        for (Path segment : root.relativize(classFile)) {
+            if (entryName.length() > 0) {
+                entryName.append('/');
+            }
+            entryName.append(segment);
+        }
+        return entryName.toString();
+    }
+
+    /**
+     * Lists the class files of a directory, forking a subtask per subdirectory.
+     */
+    private static class DirectoryWalk extends RecursiveTask<List<Path>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+
+        DirectoryWalk(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected List<Path> compute() {
+            List<Path> classFiles = new ArrayList<>();
+            List<DirectoryWalk> subdirectories = new ArrayList<>();
+
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+                for (Path child : children) {
+                    if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                        DirectoryWalk walk = new DirectoryWalk(child);
+                        walk.fork();
+                        subdirectories.add(walk);
+                    } else if (child.getFileName().toString().endsWith(Ext.CLASS) &&
+                               Files.isRegularFile(child)
+                    ) {
+                        classFiles.add(child);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            for (DirectoryWalk walk : subdirectories) {
+                classFiles.addAll(walk.join());
+            }
+            return classFiles;
+        }
+    }
+}
@@ -1,68 +1,220 @@
 package com.anttree.flow.graph.utils;
 
+import com.anttree.flow.graph.analysis.ClassRepository;
+import com.anttree.flow.graph.analysis.ClassSource;
 import com.anttree.flow.graph.model.Ext;
-import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.tree.ClassNode;
 
-import java.io.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.List;
+import java.util.function.Predicate;
 
 public class JarUtils {
 
+    private static final String NESTED_SEPARATOR = "!/";
+    private static final String[] CLASS_DIRECTORIES = {
+            "BOOT-INF/classes/",
+            "WEB-INF/classes/"
+    };
+
     public static HashMap<String, ClassNode> getEntries(
             String inputFile
     ) throws IOException {
-        HashMap<String, ClassNode> classes = new HashMap<>();
-        FileInputStream fileInputStream = new FileInputStream(inputFile);
-        ZipInputStream zipInputStream = new ZipInputStream(
-                new BufferedInputStream(fileInputStream)
-        );
-
-        ZipEntry entry;
-        while ((entry = zipInputStream.getNextEntry()) != null) {
-            if (entry.isDirectory()) {
-                continue;
-            }
+        return getEntries(inputFile, 1);
+    }
 
-            byte[] entryData = readEntryFromJar(zipInputStream);
-            String entryName = entry.getName();
+    public static HashMap<String, ClassNode> getEntries(
+            String inputFile,
+            int threads
+    ) throws IOException {
+        return new HashMap<>(index(inputFile, threads).materialize(threads));
+    }
 
-            if (!entryName.endsWith(Ext.CLASS)) {
-                continue;
-            }
+    /**
+     * Indexes the class entries of the jar and of the jars nested in it,
+     * without inflating nor parsing any class.
+     */
+    public static ClassRepository index(
+            String inputFile,
+            int threads
+    ) throws IOException {
+        return index(inputFile, threads, null);
+    }
 
+    /**
+     * Indexes the class entries accepted by the name filter, null for every class.
+     * The entries are filtered on their central directory name, before anything is read.
+     */
+    public static ClassRepository index(
+            String inputFile,
+            int threads,
+            Predicate<String> nameFilter
+    ) throws IOException {
+        ClassRepository classes = new ClassRepository();
+        indexArchive(MappedJar.open(inputFile), new File(inputFile).getName(), classes, threads, nameFilter);
+        return classes;
+    }
+
+    /**
+     * Indexes every element of the classpath (jars and class directories separated by
+     * {@link File#pathSeparator}) concurrently, into a single repository.
+     * As on the JVM, the first class found on the classpath shadows the following ones.
+     */
+    public static ClassRepository indexClassPath(
+            String classPath,
+            int threads
+    ) throws IOException {
+        return indexClassPath(classPath, threads, null);
+    }
+
+    /**
+     * Indexes the classes of the classpath accepted by the name filter, null for every class.
+     */
+    public static ClassRepository indexClassPath(
+            String classPath,
+            int threads,
+            Predicate<String> nameFilter
+    ) throws IOException {
+        List<String> elements = splitClassPath(classPath);
+
+        ClassRepository[] repositories = new ClassRepository[elements.size()];
+        IOException[] failures = new IOException[elements.size()];
+        ParallelUtils.forEach(threads, elements.size(), index -> {
             try {
-                ClassReader classReader = new ClassReader(entryData);
-                ClassNode classNode = new ClassNode();
-                classReader.accept(classNode, ClassReader.EXPAND_FRAMES);
+                String element = elements.get(index);
+                repositories[index] = indexClassPathElement(element, threads, nameFilter);
+            } catch (IOException e) {
+                failures[index] = e;
+            }
+        });
 
-                classes.put(entryName, classNode);
-            } catch (Exception e) {
-                //Ignore the failed classes if they are preserved
-                e.printStackTrace();
+        ClassRepository classes = new ClassRepository();
+        for (int index = 0; index < repositories.length; index++) {
+            if (failures[index] != null) {
+                throw failures[index];
             }
+            classes.registerAll(repositories[index]);
         }
+        return classes;
+    }
 
-        zipInputStream.close();
+    private static ClassRepository indexClassPathElement(
+            String element,
+            int threads,
+            Predicate<String> nameFilter
+    ) throws IOException {
+        // Only the jars are filtered while indexing, the other elements index their names without reading anything
+        ClassRepository classes;
+        if (ModuleUtils.isRuntimeImage(element)) {
+            classes = ModuleUtils.indexRuntimeImage(element, threads);
+        } else if (new File(element).isDirectory()) {
+            classes = DirectoryUtils.index(element, threads);
+        } else if (DexUtils.isDexInput(element)) {
+            classes = DexUtils.index(element, threads);
+        } else if (element.endsWith(Ext.JMOD)) {
+            classes = ModuleUtils.indexJmod(element);
+        } else {
+            return index(element, threads, nameFilter);
+        }
+        return nameFilter != null ? classes.filter(nameFilter) : classes;
+    }
 
-        return classes;
+    /**
+     * Splits the classpath on the path separator, keeping the jrt:/ elements whole.
+     */
+    public static List<String> splitClassPath(String classPath) {
+        List<String> elements = new ArrayList<>();
+        String[] tokens = classPath.split(File.pathSeparator);
+
+        for (int index = 0; index < tokens.length; index++) {
+            String element = tokens[index].trim();
+            if ((element + File.pathSeparator).equals(ModuleUtils.JRT_SCHEME) &&
+                index + 1 < tokens.length
+            ) {
+                element = ModuleUtils.JRT_SCHEME + tokens[++index].trim();
+            }
+            if (!element.isEmpty()) {
+                elements.add(element);
+            }
+        }
+        return elements;
     }
 
-    public static byte[] readEntryFromJar(ZipInputStream inJar) throws IOException {
-        byte[] data = new byte[4096];
-        ByteArrayOutputStream entryBuffer = new ByteArrayOutputStream();
+    private static void indexArchive(
+            MappedJar jar,
+            String origin,
+            ClassRepository classes,
+            int threads,
+            Predicate<String> nameFilter
+    ) {
+        List<MappedJar.Entry> nestedJars = new ArrayList<>();
 
-        int readLength;
-        do {
-            readLength = inJar.read(data);
-            if (readLength > 0) {
-                entryBuffer.write(data, 0, readLength);
+        for (MappedJar.Entry entry : jar.getEntries()) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            if (entry.getName().endsWith(Ext.JAR)) {
+                nestedJars.add(entry);
+                continue;
+            }
+            if (!entry.getName().endsWith(Ext.CLASS)) {
+                continue;
             }
-        } while (readLength != -1);
+            String name = getClassEntryName(entry.getName());
+            if (nameFilter != null && !nameFilter.test(name)) {
+                continue;
+            }
+            classes.register(
+                    name,
+                    new ClassSource(
+                            origin,
+                            () -> jar.read(entry),
+                            ClassSource.fingerprint(entry.getCrc(), entry.getSize())
+                    )
+            );
+        }
+
+        // Nested jars are read straight from the outer archive,
+        // stored ones are not even copied.
+        MappedJar[] nestedArchives = new MappedJar[nestedJars.size()];
+        ParallelUtils.forEach(threads, nestedJars.size(), index -> {
+            try {
+                nestedArchives[index] = new MappedJar(jar.data(nestedJars.get(index)));
+            } catch (IOException | RuntimeException e) {
+                //Ignore the nested archives which can not be read, a corrupted one must not abort the index
+                e.printStackTrace();
+            }
+        });
+
+        // Registered after the outer classes and in the archive order,
+        // the same way the class loaders of the fat jars would shadow them.
+        for (int index = 0; index < nestedArchives.length; index++) {
+            if (nestedArchives[index] != null) {
+                indexArchive(
+                        nestedArchives[index],
+                        origin + NESTED_SEPARATOR + nestedJars.get(index).getName(),
+                        classes,
+                        threads,
+                        nameFilter
+                );
+            }
+        }
+    }
 
-        return entryBuffer.toByteArray();
+    /**
+     * Strips the application class directories of the Spring Boot jars and the wars
+     * (BOOT-INF/classes/com/example/Main.class -> com/example/Main.class)
+     */
+    private static String getClassEntryName(String entryName) {
+        for (String prefix : CLASS_DIRECTORIES) {
+            if (entryName.startsWith(prefix)) {
+                return entryName.substring(prefix.length());
+            }
+        }
+        return entryName;
     }
 
     public static boolean isDefaultClassName(String className) {
@@ -0,0 +1,342 @@
+package com.anttree.flow.graph.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Random-access reader over a memory-mapped zip (jar) archive.
+ * <p>
+ * Only the central directory is parsed up front, the entry data is located
+ * and inflated on demand, so entries which are never asked for cost nothing.
+ * Reads are done with absolute positions only, hence a single instance can be
+ * shared between threads.
+ */
+public class MappedJar {
+
+    private static final int LOCAL_HEADER_SIGNATURE     = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE   = 0x02014b50;
+    private static final int END_SIGNATURE              = 0x06054b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE    = 0x07064b50;
+    private static final int ZIP64_END_SIGNATURE        = 0x06064b50;
+
+    private static final int END_SIZE                   = 22;
+    private static final int ZIP64_LOCATOR_SIZE         = 20;
+    private static final int ZIP64_END_SIZE             = 56;
+    private static final int CENTRAL_HEADER_SIZE        = 46;
+    private static final int LOCAL_HEADER_SIZE          = 30;
+    private static final int MAX_COMMENT_SIZE           = 0xFFFF;
+    private static final int ZIP64_EXTRA_ID             = 0x0001;
+
+    // Highest ratio deflate can reach, a larger size is a corrupted header
+    private static final int MAX_DEFLATE_RATIO          = 1032;
+
+    public static final int STORED                      = 0;
+    public static final int DEFLATED                    = 8;
+
+    public static class Entry {
+        private final String name;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        Entry(
+                String name,
+                int method,
+                long crc,
+                long compressedSize,
+                long size,
+                long localHeaderOffset
+        ) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final long base;
+    private final List<Entry> entries;
+
+    public MappedJar(ByteBuffer archive) throws IOException {
+        this.buffer = archive.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.buffer.clear();
+
+        int end = findEndOfCentralDirectory();
+        long count = readUnsignedShort(end + 10);
+        long directorySize = readUnsignedInt(end + 12);
+        long directoryOffset = readUnsignedInt(end + 16);
+        long directoryEnd = end;
+
+        int locator = end - ZIP64_LOCATOR_SIZE;
+        if (locator >= 0 && buffer.getInt(locator) == ZIP64_LOCATOR_SIGNATURE) {
+            int zip64End = findZip64EndOfCentralDirectory(locator);
+            if (zip64End >= 0) {
+                count = buffer.getLong(zip64End + 32);
+                directorySize = buffer.getLong(zip64End + 40);
+                directoryOffset = buffer.getLong(zip64End + 48);
+                directoryEnd = zip64End;
+            }
+        }
+
+        // Offsets are relative to the beginning of the zip stream, which is not
+        // necessarily the beginning of the file (self-extracting jars, jmod headers, ...)
+        this.base = directoryEnd - directorySize - directoryOffset;
+        if (base < 0) {
+            throw new IOException("Invalid central directory offset");
+        }
+        // Every entry takes a central header at least
+        if (count < 0 || count > buffer.limit() / CENTRAL_HEADER_SIZE) {
+            throw new IOException("Invalid entry count " + count);
+        }
+        this.entries = Collections.unmodifiableList(
+                readCentralDirectory(checkedPosition(base + directoryOffset), count)
+        );
+    }
+
+    public static MappedJar open(String inputFile) throws IOException {
+        return open(Path.of(inputFile));
+    }
+
+    public static MappedJar open(Path inputFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(inputFile, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(inputFile + " is too large to be mapped ("
+                        + channel.size() + " bytes)");
+            }
+            // The mapping stays valid after the channel has been closed
+            return new MappedJar(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the raw, still compressed, data of the entry without copying it.
+     */
+    public ByteBuffer rawData(Entry entry) throws IOException {
+        int header = checkedPosition(base + entry.localHeaderOffset);
+        checkedPosition((long) header + LOCAL_HEADER_SIZE);
+        if (buffer.getInt(header) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Invalid local header for " + entry.name);
+        }
+        int dataOffset = header + LOCAL_HEADER_SIZE
+                + readUnsignedShort(header + 26)
+                + readUnsignedShort(header + 28);
+
+        checkedPosition(dataOffset + entry.compressedSize);
+        return buffer.slice(dataOffset, (int) entry.compressedSize);
+    }
+
+    /**
+     * Returns the uncompressed data of the entry as a buffer.
+     * Stored entries are returned as a view over the mapped archive, without any copy.
+     */
+    public ByteBuffer data(Entry entry) throws IOException {
+        if (entry.method == STORED) {
+            return rawData(entry);
+        }
+        return ByteBuffer.wrap(read(entry));
+    }
+
+    public byte[] read(Entry entry) throws IOException {
+        if (entry.size > Integer.MAX_VALUE - 8) {
+            throw new IOException(entry.name + " is too large to be read");
+        }
+        ByteBuffer raw = rawData(entry);
+        if (entry.size > (entry.method == STORED ? 1L : MAX_DEFLATE_RATIO) * raw.remaining()) {
+            throw new IOException("Invalid size " + entry.size + " for " + entry.name);
+        }
+        byte[] data = new byte[(int) entry.size];
+
+        if (entry.method == STORED) {
+            raw.get(data);
+            return data;
+        }
+        if (entry.method != DEFLATED) {
+            throw new IOException("Unsupported compression method "
+                    + entry.method + " for " + entry.name);
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(raw);
+            int offset = 0;
+            while (offset < data.length && !inflater.finished()) {
+                int inflated = inflater.inflate(data, offset, data.length - offset);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += inflated;
+            }
+            if (offset != data.length) {
+                throw new IOException("Truncated entry " + entry.name);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted entry " + entry.name, e);
+        } finally {
+            inflater.end();
+        }
+        return data;
+    }
+
+    private int findEndOfCentralDirectory() throws IOException {
+        int last = buffer.limit() - END_SIZE;
+        int first = Math.max(0, last - MAX_COMMENT_SIZE);
+        for (int position = last; position >= first; position--) {
+            if (buffer.getInt(position) == END_SIGNATURE &&
+                position + END_SIZE + readUnsignedShort(position + 20) == buffer.limit()
+            ) {
+                return position;
+            }
+        }
+        throw new IOException("Not a zip archive, end of central directory not found");
+    }
+
+    /**
+     * Returns the position of the zip64 end of central directory record, -1 if there is none.
+     * The locator records its offset from the beginning of the zip stream, so with a prefix
+     * (self-extracting jars, launcher scripts, ...) the record is looked for right before the locator.
+     */
+    private int findZip64EndOfCentralDirectory(int locator) {
+        long recorded = buffer.getLong(locator + 8);
+        if (recorded >= 0 &&
+            recorded + ZIP64_END_SIZE <= locator &&
+            buffer.getInt((int) recorded) == ZIP64_END_SIGNATURE
+        ) {
+            return (int) recorded;
+        }
+        int preceding = locator - ZIP64_END_SIZE;
+        if (preceding >= 0 && buffer.getInt(preceding) == ZIP64_END_SIGNATURE) {
+            return preceding;
+        }
+        return -1;
+    }
+
+    private List<Entry> readCentralDirectory(int position, long count) throws IOException {
+        List<Entry> entries = new ArrayList<>((int) Math.min(count, 1 << 16));
+        byte[] nameBuffer = new byte[256];
+
+        for (long index = 0; index < count; index++) {
+            // A truncated directory fails as an IOException, like any other corrupted archive
+            checkedPosition((long) position + CENTRAL_HEADER_SIZE);
+            if (buffer.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Invalid central directory header at " + position);
+            }
+            int method = readUnsignedShort(position + 10);
+            long crc = readUnsignedInt(position + 16);
+            long compressedSize = readUnsignedInt(position + 20);
+            long size = readUnsignedInt(position + 24);
+            int nameLength = readUnsignedShort(position + 28);
+            int extraLength = readUnsignedShort(position + 30);
+            int commentLength = readUnsignedShort(position + 32);
+            long localHeaderOffset = readUnsignedInt(position + 42);
+            checkedPosition((long) position + CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength);
+
+            if (nameLength > nameBuffer.length) {
+                nameBuffer = new byte[nameLength];
+            }
+            buffer.get(position + CENTRAL_HEADER_SIZE, nameBuffer, 0, nameLength);
+            String name = new String(nameBuffer, 0, nameLength, StandardCharsets.UTF_8);
+
+            if (size == 0xFFFFFFFFL || compressedSize == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL) {
+                // Zip64 extended information, fields are only present when the header value overflowed
+                int extra = position + CENTRAL_HEADER_SIZE + nameLength;
+                int extraEnd = extra + extraLength;
+                while (extra + 4 <= extraEnd) {
+                    int id = readUnsignedShort(extra);
+                    int length = readUnsignedShort(extra + 2);
+                    if (id == ZIP64_EXTRA_ID) {
+                        int field = extra + 4;
+                        int fieldCount = (size == 0xFFFFFFFFL ? 1 : 0)
+                                + (compressedSize == 0xFFFFFFFFL ? 1 : 0)
+                                + (localHeaderOffset == 0xFFFFFFFFL ? 1 : 0);
+                        if (length < fieldCount * 8 || field + length > extraEnd) {
+                            throw new IOException("Invalid zip64 extra field for " + name);
+                        }
+                        if (size == 0xFFFFFFFFL) {
+                            size = buffer.getLong(field);
+                            field += 8;
+                        }
+                        if (compressedSize == 0xFFFFFFFFL) {
+                            compressedSize = buffer.getLong(field);
+                            field += 8;
+                        }
+                        if (localHeaderOffset == 0xFFFFFFFFL) {
+                            localHeaderOffset = buffer.getLong(field);
+                        }
+                        break;
+                    }
+                    extra += 4 + length;
+                }
+            }
+
+            if (size < 0 || compressedSize < 0 || localHeaderOffset < 0) {
+                throw new IOException("Invalid sizes or offset for " + name);
+            }
+            entries.add(new Entry(name, method, crc, compressedSize, size, localHeaderOffset));
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private int checkedPosition(long position) throws IOException {
+        if (position < 0 || position > buffer.limit()) {
+            throw new IOException("Offset " + position + " is out of the archive bounds");
+        }
+        return (int) position;
+    }
+
+    private int readUnsignedShort(int position) {
+        return buffer.getShort(position) & 0xFFFF;
+    }
+
+    private long readUnsignedInt(int position) {
+        return buffer.getInt(position) & 0xFFFFFFFFL;
+    }
+}
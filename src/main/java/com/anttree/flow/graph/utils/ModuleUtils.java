@@ -0,0 +1,129 @@
+package com.anttree.flow.graph.utils;
+
+import com.anttree.flow.graph.analysis.ClassRepository;
+import com.anttree.flow.graph.analysis.ClassSource;
+import com.anttree.flow.graph.model.Ext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class ModuleUtils {
+
+    public static final String JRT_SCHEME = "jrt:";
+    public static final String JRT_ROOT = "jrt:/";
+
+    private static final String JMOD_CLASSES = "classes/";
+    private static final String MODULES = "modules";
+
+    private static final byte[] JMOD_MAGIC = {'J', 'M'};
+
+    public static boolean isRuntimeImage(String input) {
+        return input.startsWith(JRT_ROOT) ||
+               Files.isRegularFile(Path.of(input, "lib", MODULES));
+    }
+
+    /**
+     * Indexes the classes of a .jmod file.
+     * The JM header is skipped, and only the classes/ section is read.
+     */
+    public static ClassRepository indexJmod(
+            String inputFile
+    ) throws IOException {
+        if (!hasJmodMagic(inputFile)) {
+            throw new IOException(inputFile + " is not a jmod file");
+        }
+        MappedJar jmod = MappedJar.open(inputFile);
+
+        String origin = new File(inputFile).getName();
+        ClassRepository classes = new ClassRepository();
+
+        // The central directory offsets are relative to the zip stream following the JM header
+        for (MappedJar.Entry entry : jmod.getEntries()) {
+            String entryName = entry.getName();
+            if (entry.isDirectory() ||
+                !entryName.startsWith(JMOD_CLASSES) ||
+                !entryName.endsWith(Ext.CLASS)
+            ) {
+                continue;
+            }
+            classes.register(
+                    entryName.substring(JMOD_CLASSES.length()),
+                    new ClassSource(
+                            origin,
+                            () -> jmod.read(entry),
+                            ClassSource.fingerprint(entry.getCrc(), entry.getSize())
+                    )
+            );
+        }
+        return classes;
+    }
+
+    /**
+     * Indexes the classes of a runtime image through the jrt:/ file system.
+     * <ul>
+     *     <li>jrt:/ reads every module of the current runtime.</li>
+     *     <li>jrt:/java.base reads a single module of the current runtime.</li>
+     *     <li>path/to/image reads every module of a jlink image (a directory holding lib/modules).</li>
+     * </ul>
+     */
+    public static ClassRepository indexRuntimeImage(
+            String input,
+            int threads
+    ) throws IOException {
+        FileSystem fileSystem;
+        String module = null;
+
+        if (input.startsWith(JRT_ROOT)) {
+            fileSystem = FileSystems.getFileSystem(URI.create(JRT_ROOT));
+            module = input.substring(JRT_ROOT.length()).replace("/", "");
+        } else {
+            fileSystem = FileSystems.newFileSystem(
+                    URI.create(JRT_ROOT),
+                    Map.of("java.home", Path.of(input).toAbsolutePath().toString())
+            );
+        }
+
+        Path modules = fileSystem.getPath("/" + MODULES);
+        List<Path> moduleRoots = new ArrayList<>();
+        if (module != null && !module.isEmpty()) {
+            Path moduleRoot = modules.resolve(module);
+            if (!Files.isDirectory(moduleRoot)) {
+                throw new IOException("Module " + module + " not found in the runtime image");
+            }
+            moduleRoots.add(moduleRoot);
+        } else {
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(modules)) {
+                children.forEach(moduleRoots::add);
+            }
+            Collections.sort(moduleRoots);
+        }
+
+        ClassRepository classes = new ClassRepository();
+        for (Path moduleRoot : moduleRoots) {
+            String origin = JRT_ROOT + moduleRoot.getFileName();
+            for (Path classFile : DirectoryUtils.walk(moduleRoot, threads)) {
+                classes.register(
+                        DirectoryUtils.getEntryName(moduleRoot, classFile),
+                        new ClassSource(origin, () -> Files.readAllBytes(classFile))
+                );
+            }
+        }
+        return classes;
+    }
+
+    private static boolean hasJmodMagic(String inputFile) throws IOException {
+        byte[] header = new byte[JMOD_MAGIC.length];
+        try (InputStream stream = Files.newInputStream(Path.of(inputFile))) {
+            return stream.read(header) == header.length &&
+                   header[0] == JMOD_MAGIC[0] &&
+                   header[1] == JMOD_MAGIC[1];
+        }
+    }
+}
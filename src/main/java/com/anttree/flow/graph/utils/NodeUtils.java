@@ -1,14 +1,18 @@
 package com.anttree.flow.graph.utils;
 
 import com.anttree.flow.graph.model.Ext;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.signature.SignatureReader;
+import org.objectweb.asm.signature.SignatureVisitor;
 
-import java.util.HashSet;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class NodeUtils {
 
+    private static final Map<String, Set<String>> GENERIC_TYPES = new ConcurrentHashMap<>();   // signature : class names
+    private static final int GENERIC_TYPES_LIMIT = 1 << 16;
+
     public static String normalizeClassName(String className) {
         String normalizedClassName = className.trim();
         if (normalizedClassName.startsWith("L")) {
@@ -27,21 +31,80 @@ public class NodeUtils {
         return normalizedClassName.replace(".", "/");
     }
 
+    /**
+     * Returns every class referred to by the generic signature, nested type arguments,
+     * bounds and inner classes included (Map<String, List<Foo>> -> Map, String, List, Foo).
+     * The thrown types are left out, as they are for the methods without any signature.
+     * Signatures repeat a lot across a jar, the decoded ones are cached, and the
+     * returned set is shared, hence unmodifiable. The cache is emptied once it holds
+     * GENERIC_TYPES_LIMIT signatures, so that it does not grow with the analysed jars.
+     */
     public static Set<String> getGenericTypesInSignature(String signature) {
-        Set<String> classNames = new HashSet<>();
         if (signature == null || signature.isEmpty()) {
-            return classNames;
+            return Collections.emptySet();
         }
-        Pattern pattern = Pattern.compile("<([^>]+)>");
-        Matcher matcher = pattern.matcher(signature);
-
-        while (matcher.find()) {
-            String genericType = matcher.group(1);
-            classNames.add(normalizeClassName(genericType));
+        Set<String> classNames = GENERIC_TYPES.get(signature);
+        if (classNames == null) {
+            if (GENERIC_TYPES.size() >= GENERIC_TYPES_LIMIT) {
+                GENERIC_TYPES.clear();
+            }
+            classNames = GENERIC_TYPES.computeIfAbsent(signature, NodeUtils::decodeSignature);
         }
         return classNames;
     }
 
+    private static Set<String> decodeSignature(String signature) {
+        Set<String> classNames = new HashSet<>();
+        try {
+            new SignatureReader(signature).accept(new ClassTypeCollector(classNames));
+        } catch (RuntimeException e) {
+            // Malformed signatures (obfuscated classes) are not worth failing the class
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(classNames);
+    }
+
+    /**
+     * Collects the class types of a signature, in the single pass of the SignatureReader.
+     */
+    private static class ClassTypeCollector extends SignatureVisitor {
+
+        // Visits the thrown types without collecting them
+        private static final SignatureVisitor IGNORED = new SignatureVisitor(Opcodes.ASM9) {
+        };
+
+        private final Set<String> classNames;
+        private final Deque<String> classTypes = new ArrayDeque<>();    // class types being visited, innermost first
+
+        ClassTypeCollector(Set<String> classNames) {
+            super(Opcodes.ASM9);
+            this.classNames = classNames;
+        }
+
+        @Override
+        public void visitClassType(String name) {
+            classTypes.push(name);
+            classNames.add(name);
+        }
+
+        @Override
+        public void visitInnerClassType(String name) {
+            String innerName = classTypes.pop() + "$" + name;
+            classTypes.push(innerName);
+            classNames.add(innerName);
+        }
+
+        @Override
+        public void visitEnd() {
+            classTypes.pop();
+        }
+
+        @Override
+        public SignatureVisitor visitExceptionType() {
+            return IGNORED;
+        }
+    }
+
     public static Set<String> getClassNamesFromMethodDescriptor(String descriptor) {
         Set<String> classNames = new HashSet<>();
         int paramStart = descriptor.indexOf('(');
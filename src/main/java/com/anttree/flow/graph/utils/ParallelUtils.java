@@ -0,0 +1,61 @@
+package com.anttree.flow.graph.utils;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+public class ParallelUtils {
+
+    /**
+     * Runs the task for every index in [0, size) over a work-stealing pool of the given parallelism.
+     * Tasks must not depend on the execution order, callers are responsible
+     * for gathering the results in a deterministic order.
+     * <p>
+     * Called from a task already running in a pool, the indexes are forked into that pool,
+     * so that nested stages (the jars of a classpath, their nested jars) share its threads.
+     */
+    public static void forEach(int threads, int size, IntConsumer task) {
+        if (threads <= 1 || size <= 1) {
+            for (int index = 0; index < size; index++) {
+                task.accept(index);
+            }
+            return;
+        }
+        if (ForkJoinTask.inForkJoinPool()) {
+            IntStream.range(0, size).parallel().forEach(task);
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Math.min(threads, size));
+        try {
+            pool.submit(() ->
+                    IntStream.range(0, size).parallel().forEach(task)
+            ).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs the fork-join task over a work-stealing pool of the given parallelism,
+     * or in the pool of the calling task, as {@link #forEach(int, int, IntConsumer)}.
+     */
+    public static <T> T invoke(int threads, ForkJoinTask<T> task) {
+        if (ForkJoinTask.inForkJoinPool()) {
+            return task.invoke();
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            return pool.invoke(task);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
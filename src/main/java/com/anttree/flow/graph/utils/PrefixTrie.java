@@ -0,0 +1,84 @@
+package com.anttree.flow.graph.utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Predicate;
+
+/**
+ * Accepts the names starting with any of the prefixes (--target packages),
+ * in a single walk over the name whatever the number of prefixes.
+ * <p>
+ * The nodes are kept in parallel arrays, each node linking to its first child
+ * and to its next sibling, so a test allocates nothing.
+ */
+public final class PrefixTrie implements Predicate<String> {
+
+    private static final int NONE = -1;
+
+    private char[] labels = new char[16];
+    private int[] firstChildren = new int[16];
+    private int[] nextSiblings = new int[16];
+    private boolean[] terminals = new boolean[16];
+    private int size = 1;   // node 0 is the root
+
+    public PrefixTrie(Collection<String> prefixes) {
+        firstChildren[0] = NONE;
+        nextSiblings[0] = NONE;
+        for (String prefix : prefixes) {
+            add(prefix);
+        }
+    }
+
+    private void add(String prefix) {
+        int node = 0;
+        for (int index = 0; index < prefix.length() && !terminals[node]; index++) {
+            int child = child(node, prefix.charAt(index));
+            if (child == NONE) {
+                child = newNode(prefix.charAt(index));
+                nextSiblings[child] = firstChildren[node];
+                firstChildren[node] = child;
+            }
+            node = child;
+        }
+        // A shorter prefix already accepts every name of the longer one
+        terminals[node] = true;
+        firstChildren[node] = NONE;
+    }
+
+    @Override
+    public boolean test(String name) {
+        int node = 0;
+        for (int index = 0; !terminals[node]; index++) {
+            if (index == name.length()) {
+                return false;
+            }
+            node = child(node, name.charAt(index));
+            if (node == NONE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int child(int node, char label) {
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            if (labels[child] == label) {
+                return child;
+            }
+        }
+        return NONE;
+    }
+
+    private int newNode(char label) {
+        if (size == labels.length) {
+            labels = Arrays.copyOf(labels, size * 2);
+            firstChildren = Arrays.copyOf(firstChildren, size * 2);
+            nextSiblings = Arrays.copyOf(nextSiblings, size * 2);
+            terminals = Arrays.copyOf(terminals, size * 2);
+        }
+        labels[size] = label;
+        firstChildren[size] = NONE;
+        nextSiblings[size] = NONE;
+        return size++;
+    }
+}